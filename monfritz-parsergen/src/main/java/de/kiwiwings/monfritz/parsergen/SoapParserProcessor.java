@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz.parsergen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a StAX based parser for each {@code @XmlRootElement} class, which assigns the
+ * {@code @XmlElement} mapped fields directly - without the reflection of the JAXB runtime.
+ * <p>
+ * For a response class {@code Foo} the parser is called {@code FooParser}, lives in the same package
+ * and implements {@code de.kiwiwings.monfritz.SoapResponseParser}. If a class uses a mapping which
+ * isn't supported here - private fields or complex types - no parser is generated and the poller
+ * falls back to JAXB.
+ */
+@SupportedAnnotationTypes(SoapParserProcessor.XML_ROOT_ELEMENT)
+public class SoapParserProcessor extends AbstractProcessor {
+    static final String XML_ROOT_ELEMENT = "jakarta.xml.bind.annotation.XmlRootElement";
+    static final String XML_ELEMENT = "jakarta.xml.bind.annotation.XmlElement";
+
+    private static final String PARSER_INTERFACE = "de.kiwiwings.monfritz.SoapResponseParser";
+    private static final String VALUES_CLASS = "de.kiwiwings.monfritz.SoapValues";
+    private static final String DEFAULT_NAME = "##default";
+
+    /** Java type of the field to the {@code SoapValues} conversion method */
+    private static final Map<String, String> CONVERTERS = Map.of(
+        "java.lang.String", "parseString",
+        "java.lang.Integer", "parseInteger",
+        "int", "parseInt",
+        "java.lang.Long", "parseLong",
+        "long", "parseLongValue",
+        "java.lang.Boolean", "parseBoolean",
+        "boolean", "parseBooleanValue",
+        "java.lang.Double", "parseDouble",
+        "double", "parseDoubleValue"
+    );
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (e.getKind() == ElementKind.CLASS) {
+                    generate((TypeElement) e);
+                }
+            }
+        }
+        // the JAXB runtime still needs to see the annotations
+        return false;
+    }
+
+    private void generate(final TypeElement type) {
+        final List<Mapping> mappings = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            final AnnotationMirror xmlElement = findAnnotation(field, XML_ELEMENT);
+            if (xmlElement == null) {
+                continue;
+            }
+            final String converter = CONVERTERS.get(field.asType().toString());
+            final Set<Modifier> mods = field.getModifiers();
+            if (converter == null || mods.contains(Modifier.PRIVATE) || mods.contains(Modifier.FINAL) || mods.contains(Modifier.STATIC)) {
+                note(type, "field " + field.getSimpleName() + " can't be assigned directly - using JAXB");
+                return;
+            }
+            String name = stringValue(xmlElement, "name");
+            if (name == null || DEFAULT_NAME.equals(name)) {
+                name = field.getSimpleName().toString();
+            }
+            mappings.add(new Mapping(name, field.getSimpleName().toString(), converter));
+        }
+
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !hasDefaultConstructor(type)) {
+            note(type, "no accessible default constructor - using JAXB");
+            return;
+        }
+
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        final String pkgName = pkg.getQualifiedName().toString();
+        final String responseName = type.getSimpleName().toString();
+        final String parserName = responseName + "Parser";
+
+        try (PrintWriter pw = new PrintWriter(processingEnv.getFiler().createSourceFile(
+                (pkg.isUnnamed() ? "" : pkgName + ".") + parserName, type).openWriter())) {
+            writeParser(pw, pkgName, responseName, parserName, mappings);
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't write " + parserName + ": " + ex.getMessage(), type);
+        }
+    }
+
+    private static void writeParser(final PrintWriter pw, final String pkgName, final String responseName, final String parserName, final List<Mapping> mappings) {
+        if (!pkgName.isEmpty()) {
+            pw.println("package " + pkgName + ";");
+            pw.println();
+        }
+        pw.println("/**");
+        pw.println(" * Generated by " + SoapParserProcessor.class.getName() + " from the JAXB mapping of {@link " + responseName + "} - don't edit.");
+        pw.println(" */");
+        pw.println("final class " + parserName + " implements " + PARSER_INTERFACE + "<" + responseName + "> {");
+        pw.println("    @Override");
+        pw.println("    public " + responseName + " parse(final javax.xml.stream.XMLStreamReader xsr) throws javax.xml.stream.XMLStreamException {");
+        pw.println("        final " + responseName + " response = new " + responseName + "();");
+        pw.println("        while (xsr.nextTag() == javax.xml.stream.XMLStreamConstants.START_ELEMENT) {");
+        pw.println("            switch (xsr.getLocalName()) {");
+        for (Mapping m : mappings) {
+            pw.println("                case \"" + m.element + "\":");
+            pw.println("                    response." + m.field + " = " + VALUES_CLASS + "." + m.converter + "(xsr.getElementText());");
+            pw.println("                    break;");
+        }
+        pw.println("                default:");
+        pw.println("                    " + VALUES_CLASS + ".skipElement(xsr);");
+        pw.println("                    break;");
+        pw.println("            }");
+        pw.println("        }");
+        pw.println("        return response;");
+        pw.println("    }");
+        pw.println("}");
+    }
+
+    private static boolean hasDefaultConstructor(final TypeElement type) {
+        final List<ExecutableElement> ctors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        return ctors.stream().anyMatch(c -> c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE));
+    }
+
+    private static AnnotationMirror findAnnotation(final Element element, final String annotationType) {
+        for (AnnotationMirror am : element.getAnnotationMirrors()) {
+            if (annotationType.equals(am.getAnnotationType().toString())) {
+                return am;
+            }
+        }
+        return null;
+    }
+
+    private static String stringValue(final AnnotationMirror am, final String attribute) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> me : am.getElementValues().entrySet()) {
+            if (attribute.contentEquals(me.getKey().getSimpleName())) {
+                return (String) me.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void note(final Element element, final String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, msg, element);
+    }
+
+    private static class Mapping {
+        final String element;
+        final String field;
+        final String converter;
+
+        Mapping(final String element, final String field, final String converter) {
+            this.element = element;
+            this.field = field;
+            this.converter = converter;
+        }
+    }
+}
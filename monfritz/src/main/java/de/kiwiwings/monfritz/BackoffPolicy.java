@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Adapts the poll interval of an action to the health of the device.
+ * <p>
+ * Consecutive failures - including actions which missed the deadline of their cycle - stretch the
+ * interval exponentially with jitter, so a fleet of devices doesn't retry in lockstep. After
+ * {@link #withFailureThreshold(int) N} failures the circuit opens and the action rests for the
+ * {@link #withOpenDuration(Duration) open duration}. Then a single half-open probe decides whether
+ * the circuit closes again or stays open.
+ * <p>
+ * Successful responses, which took longer than the {@link #withSlowLatency(Duration) slow latency},
+ * hint at an overloaded router and stretch the interval as well. Once the latency recovers, the
+ * interval is halved on each success until it's back at the configured period.
+ * <p>
+ * The policy is immutable - the per-action state is created by {@link #newState}.
+ */
+public final class BackoffPolicy {
+    public static final BackoffPolicy DEFAULT = new BackoffPolicy(5, Duration.ofMinutes(1).toNanos(),
+        Duration.ofSeconds(30).toNanos(), Duration.ofMillis(500).toNanos());
+
+    private static final System.Logger LOG = System.getLogger(BackoffPolicy.class.getName());
+
+    /** weight of the latest latency in the moving average */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    /** the part of the interval, which is randomized */
+    private static final double JITTER = 0.2;
+
+    private final int failureThreshold;
+    private final long maxInterval;
+    private final long openDuration;
+    private final long slowLatency;
+
+    private BackoffPolicy(final int failureThreshold, final long maxInterval, final long openDuration, final long slowLatency) {
+        this.failureThreshold = failureThreshold;
+        this.maxInterval = maxInterval;
+        this.openDuration = openDuration;
+        this.slowLatency = slowLatency;
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures, which open the circuit
+     * @return a copy of the policy with the given threshold
+     */
+    public BackoffPolicy withFailureThreshold(final int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        return new BackoffPolicy(failureThreshold, maxInterval, openDuration, slowLatency);
+    }
+
+    /**
+     * @param maxInterval the upper limit of the stretched interval
+     * @return a copy of the policy with the given limit
+     */
+    public BackoffPolicy withMaxInterval(final Duration maxInterval) {
+        return new BackoffPolicy(failureThreshold, positive(maxInterval), openDuration, slowLatency);
+    }
+
+    /**
+     * @param openDuration the time an open circuit waits before it's probed
+     * @return a copy of the policy with the given duration
+     */
+    public BackoffPolicy withOpenDuration(final Duration openDuration) {
+        return new BackoffPolicy(failureThreshold, maxInterval, positive(openDuration), slowLatency);
+    }
+
+    /**
+     * @param slowLatency the average latency, above which the device is regarded as overloaded
+     * @return a copy of the policy with the given latency
+     */
+    public BackoffPolicy withSlowLatency(final Duration slowLatency) {
+        return new BackoffPolicy(failureThreshold, maxInterval, openDuration, positive(slowLatency));
+    }
+
+    /**
+     * @param name the name of the action used in the log
+     * @param period the configured interval of the action in nanoseconds
+     * @return the initial - closed - state of an action
+     */
+    State newState(final String name, final long period) {
+        return new State(name, period);
+    }
+
+    private static long positive(final Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        return duration.toNanos();
+    }
+
+    enum Circuit {
+        /** the action is polled - maybe with a stretched interval */
+        CLOSED,
+        /** the action rests */
+        OPEN,
+        /** the next poll is a probe */
+        HALF_OPEN
+    }
+
+    /**
+     * The adaptive interval and the circuit of one action. Not thread-safe - the polls of an action never overlap.
+     */
+    final class State {
+        private final String name;
+        private final long period;
+        private Circuit circuit = Circuit.CLOSED;
+        private int failures;
+        private long interval;
+        private double latency;
+
+        private State(final String name, final long period) {
+            this.name = name;
+            this.period = period;
+            this.interval = period;
+        }
+
+        Circuit getCircuit() {
+            return circuit;
+        }
+
+        /**
+         * @return {@code true}, if the action is polled with its configured period
+         */
+        boolean isSteady() {
+            return circuit == Circuit.CLOSED && interval == period;
+        }
+
+        /**
+         * @param start the {@link System#nanoTime()} the poll started
+         * @param latencyNanos the duration of the poll
+         * @return the next start of the action
+         */
+        long succeeded(final long start, final long latencyNanos) {
+            latency = (failures > 0 || latency == 0) ? latencyNanos : LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * latency;
+            if (circuit != Circuit.CLOSED) {
+                LOG.log(INFO, "{0} recovered - circuit closed", name);
+                circuit = Circuit.CLOSED;
+            }
+            failures = 0;
+            if (latency > slowLatency) {
+                stretch("slow responses (" + (long) (latency / 1_000_000) + " ms)");
+            } else if (interval > period) {
+                // tighten again
+                interval = Math.max(period, interval / 2);
+                if (interval == period) {
+                    LOG.log(INFO, "{0} back at its period", name);
+                }
+            }
+            return start + jitter(interval);
+        }
+
+        /**
+         * @param start the {@link System#nanoTime()} the poll started
+         * @param cause the failure or {@code null} if the poll missed the deadline
+         * @return the next start of the action
+         */
+        long failed(final long start, final Exception cause) {
+            failures++;
+            final String reason = (cause == null) ? "missed deadline" : cause.toString();
+            if (circuit == Circuit.HALF_OPEN || failures >= failureThreshold) {
+                // a failed probe is only worth a debug message, otherwise a dead device logs forever
+                LOG.log(circuit == Circuit.HALF_OPEN ? DEBUG : WARNING, "{0} failed {1} time(s), last: {2} - circuit opened for {3} s",
+                    name, failures, reason, openDuration / 1_000_000_000);
+                circuit = Circuit.OPEN;
+                return start + jitter(openDuration);
+            }
+            LOG.log(DEBUG, "{0} failed: {1}", name, reason);
+            stretch(reason);
+            return start + jitter(interval);
+        }
+
+        /**
+         * Called when the open circuit is due - the following poll is the probe
+         */
+        void probe() {
+            if (circuit == Circuit.OPEN) {
+                LOG.log(DEBUG, "{0} probing", name);
+                circuit = Circuit.HALF_OPEN;
+            }
+        }
+
+        private void stretch(final String reason) {
+            final long stretched = Math.min(maxInterval, Math.max(interval, period) * 2);
+            if (stretched != interval) {
+                if (interval == period) {
+                    LOG.log(INFO, "{0} backing off: {1}", name, reason);
+                }
+                interval = stretched;
+            }
+        }
+
+        private long jitter(final long nanos) {
+            if (nanos == period) {
+                // steady polls keep their fixed rate
+                return nanos;
+            }
+            final long range = (long) (nanos * JITTER);
+            return nanos - range / 2 + ThreadLocalRandom.current().nextLong(range + 1);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates high-frequency samples into fixed time buckets with min, max, mean and last value.
+ * <p>
+ * The samples are added lock-free by the polling threads, while the consumer - usually the
+ * JavaFX thread - only drains the finished buckets. So sub-second polls catch bursts, which a
+ * one second sample hides, without the consumer processing each sample.
+ * <p>
+ * A bucket is finished, when the first sample of a later bucket arrives or when it's drained
+ * after its end. Samples for an already finished bucket are dropped and counted as late.
+ */
+public class BucketAccumulator {
+    private final long width;
+    private final AtomicReference<Bucket> current = new AtomicReference<>();
+    private final Queue<Bucket> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicLong late = new AtomicLong();
+
+    /**
+     * @param width the time span of a bucket
+     */
+    public BucketAccumulator(final Duration width) {
+        if (width.isNegative() || width.isZero()) {
+            throw new IllegalArgumentException("width must be positive");
+        }
+        this.width = width.toNanos();
+    }
+
+    public Duration getWidth() {
+        return Duration.ofNanos(width);
+    }
+
+    /**
+     * @param captureNanos the {@link System#nanoTime()} the sample was captured
+     * @param value the sample
+     * @return {@code true}, if the sample finished the previous bucket
+     */
+    public boolean add(final long captureNanos, final double value) {
+        final long index = Math.floorDiv(captureNanos, width);
+        for (;;) {
+            final Bucket b = current.get();
+            if (b != null && b.index == index) {
+                b.accumulate(value);
+                return false;
+            }
+            if (b != null && b.index > index) {
+                late.incrementAndGet();
+                return false;
+            }
+            final Bucket next = new Bucket(index, width);
+            next.accumulate(value);
+            if (current.compareAndSet(b, next)) {
+                if (b != null) {
+                    finished.add(b);
+                }
+                return b != null;
+            }
+            // another thread rotated the bucket - retry with its bucket
+        }
+    }
+
+    /**
+     * Passes the finished buckets to the consumer in chronological order
+     *
+     * @param nowNanos the current {@link System#nanoTime()} - the current bucket is finished too, if it has ended
+     * @param consumer the receiver of the buckets
+     */
+    public void drain(final long nowNanos, final Consumer<Bucket> consumer) {
+        final Bucket b = current.get();
+        if (b != null && nowNanos - b.getEndNanos() >= 0 && current.compareAndSet(b, null)) {
+            finished.add(b);
+        }
+        for (Bucket f; (f = finished.poll()) != null; ) {
+            consumer.accept(f);
+        }
+    }
+
+    /**
+     * @return the number of samples, which were dropped because their bucket was already finished
+     */
+    public long getLateCount() {
+        return late.get();
+    }
+
+    /**
+     * The aggregate of the samples within one time span
+     */
+    public static final class Bucket {
+        private final long index;
+        private final long width;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final AtomicLong min = new AtomicLong(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        private final AtomicLong max = new AtomicLong(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+        private volatile double last;
+
+        private Bucket(final long index, final long width) {
+            this.index = index;
+            this.width = width;
+        }
+
+        private void accumulate(final double value) {
+            count.increment();
+            sum.add(value);
+            last = value;
+            long bits;
+            while (value < Double.longBitsToDouble(bits = min.get()) && !min.compareAndSet(bits, Double.doubleToRawLongBits(value))) {
+                // retry
+            }
+            while (value > Double.longBitsToDouble(bits = max.get()) && !max.compareAndSet(bits, Double.doubleToRawLongBits(value))) {
+                // retry
+            }
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} of the start of the bucket
+         */
+        public long getStartNanos() {
+            return index * width;
+        }
+
+        public long getEndNanos() {
+            return (index + 1) * width;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMin() {
+            return Double.longBitsToDouble(min.get());
+        }
+
+        public double getMax() {
+            return Double.longBitsToDouble(max.get());
+        }
+
+        public double getMean() {
+            return sum.sum() / count.sum();
+        }
+
+        /**
+         * @return the value of the latest sample - i.e. the sample added last
+         */
+        public double getLast() {
+            return last;
+        }
+    }
+}
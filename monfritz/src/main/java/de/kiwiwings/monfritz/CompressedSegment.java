@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, compressed segment file of a {@link StoredSeries}, which replaces a full {@link StoreSegment}.
+ * <p>
+ * Layout: a header of {@value StoreSegment#HEADER_SIZE} bytes - magic, version, block count, sample count,
+ * offset of the index, first and last time - followed by the blocks of {@link SampleBlockEncoder}
+ * and the block index. Each index entry holds the first time, the offset and the sample count of
+ * a block, so a range scan only decodes - and pages in - the blocks of the range.
+ * <p>
+ * The file is written to a temporary file and moved in place, so it's either complete or missing.
+ */
+final class CompressedSegment {
+    static final String SUFFIX = ".gor";
+    /** the suffix of the file while it's written */
+    static final String TMP_SUFFIX = SUFFIX + ".tmp";
+
+    private static final int MAGIC = 0x4D46545A; // "MFTZ"
+    private static final int VERSION = 1;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int OFS_MAGIC = 0;
+    private static final int OFS_VERSION = 4;
+    private static final int OFS_BLOCK_COUNT = 8;
+    private static final int OFS_SAMPLE_COUNT = 16;
+    private static final int OFS_INDEX = 24;
+    private static final int OFS_FIRST_TIME = 32;
+    private static final int OFS_LAST_TIME = 40;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final long lastTime;
+    // the block index is kept on the heap, so searching it doesn't touch the mapping
+    private final long[] blockTimes;
+    private final int[] blockOffsets;
+    private final int[] blockCounts;
+
+    private CompressedSegment(final Path path, final MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < StoreSegment.HEADER_SIZE || buffer.getInt(OFS_MAGIC) != MAGIC || buffer.getInt(OFS_VERSION) != VERSION) {
+            throw new IOException(path + " is no compressed segment of this version");
+        }
+        final int blockCount = buffer.getInt(OFS_BLOCK_COUNT);
+        final long sampleCount = buffer.getLong(OFS_SAMPLE_COUNT);
+        final long index = buffer.getLong(OFS_INDEX);
+        if (blockCount <= 0 || sampleCount <= 0 || sampleCount > Integer.MAX_VALUE
+            || index < StoreSegment.HEADER_SIZE || index + (long) blockCount * INDEX_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException(path + " is truncated");
+        }
+        size = (int) sampleCount;
+        lastTime = buffer.getLong(OFS_LAST_TIME);
+        blockTimes = new long[blockCount];
+        blockOffsets = new int[blockCount];
+        blockCounts = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            final int ofs = (int) index + i * INDEX_ENTRY_SIZE;
+            blockTimes[i] = buffer.getLong(ofs);
+            blockOffsets[i] = buffer.getInt(ofs + 8);
+            blockCounts[i] = buffer.getInt(ofs + 12);
+        }
+    }
+
+    /**
+     * Compresses the samples of a segment
+     *
+     * @param path the compressed segment file
+     * @param source the segment to compress
+     * @return the compressed segment
+     */
+    static CompressedSegment write(final Path path, final StoreSegment source) throws IOException {
+        final int size = source.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("can't compress an empty segment");
+        }
+        final int blockCount = (size + SampleBlockEncoder.MAX_SAMPLES - 1) / SampleBlockEncoder.MAX_SAMPLES;
+        final ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+        final SampleBlockEncoder encoder = new SampleBlockEncoder();
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long pos = StoreSegment.HEADER_SIZE;
+                fc.position(pos);
+                for (int i = 0; i < size; i++) {
+                    encoder.add(source.getTime(i), source.getValue(i));
+                    if (encoder.getCount() == SampleBlockEncoder.MAX_SAMPLES || i == size - 1) {
+                        index.putLong(encoder.getFirstTime()).putInt((int) pos).putInt(encoder.getCount());
+                        pos += writeFully(fc, ByteBuffer.wrap(encoder.getBuffer(), 0, encoder.getLength()));
+                        encoder.reset();
+                    }
+                }
+                if (pos > Integer.MAX_VALUE) {
+                    throw new IOException(path + " exceeds the maximum segment size");
+                }
+                writeFully(fc, index.flip());
+
+                final ByteBuffer header = ByteBuffer.allocate(StoreSegment.HEADER_SIZE);
+                header.putInt(OFS_MAGIC, MAGIC);
+                header.putInt(OFS_VERSION, VERSION);
+                header.putInt(OFS_BLOCK_COUNT, blockCount);
+                header.putLong(OFS_SAMPLE_COUNT, size);
+                header.putLong(OFS_INDEX, pos);
+                header.putLong(OFS_FIRST_TIME, source.getFirstTime());
+                header.putLong(OFS_LAST_TIME, source.getLastTime());
+                fc.position(0);
+                writeFully(fc, header);
+                fc.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            // e.g. the disk is full - the source segment stays in place
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return open(path);
+    }
+
+    private static int writeFully(final FileChannel fc, final ByteBuffer bb) throws IOException {
+        final int len = bb.remaining();
+        while (bb.hasRemaining()) {
+            fc.write(bb);
+        }
+        return len;
+    }
+
+    /**
+     * @param path the existing compressed segment file
+     * @return the segment
+     */
+    static CompressedSegment open(final Path path) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+        return new CompressedSegment(path, buffer);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getFirstTime() {
+        return blockTimes[0];
+    }
+
+    long getLastTime() {
+        return lastTime;
+    }
+
+    int getBlockCount() {
+        return blockTimes.length;
+    }
+
+    long getBlockTime(final int block) {
+        return blockTimes[block];
+    }
+
+    /**
+     * @param time the time to search
+     * @return the index of the block, which contains the time or the first sample after it
+     */
+    int findBlock(final long time) {
+        int low = 0;
+        int high = blockTimes.length - 1;
+        // the last block starting at or before the time
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (blockTimes[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Positions the decoder at the start of a block - random access doesn't decode the preceding blocks
+     *
+     * @param block the index of the block
+     * @param decoder the decoder to reset
+     */
+    void decodeBlock(final int block, final SampleBlockDecoder decoder) {
+        decoder.reset(buffer, blockOffsets[block], blockCounts[block]);
+    }
+
+    /**
+     * Passes the samples of the time range in chronological order to the consumer
+     *
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @param consumer the receiver of the samples
+     * @return {@code false}, if the end of the range was reached
+     */
+    boolean scan(final long from, final long to, final SampleConsumer consumer) {
+        final SampleBlockDecoder decoder = new SampleBlockDecoder();
+        for (int block = findBlock(from); block < blockTimes.length; block++) {
+            if (blockTimes[block] >= to) {
+                return false;
+            }
+            decodeBlock(block, decoder);
+            while (decoder.next()) {
+                final long time = decoder.getTime();
+                if (time >= to) {
+                    return false;
+                }
+                if (time >= from) {
+                    consumer.accept(time, decoder.getValue());
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+
+/**
+ * Derives the exact rate of a byte counter - e.g. {@code totalBytesReceived} - from the counter deltas
+ * and the monotonic capture times of the samples.
+ * <p>
+ * In contrast to the rates reported by the router, which are averaged by the firmware, the derived
+ * rate is correct for any poll interval. It's averaged over the configured window - i.e. between
+ * the latest sample and the newest sample at least the window before it.
+ * <p>
+ * Older firmwares report the counters as 32-bit values. A counter which drops from the upper quarter
+ * of the 32-bit range is therefore regarded as wrapped, if the resulting rate is plausible. Any other
+ * decrease is a reset - e.g. by a reboot of the router - and the derivation starts over.
+ * <p>
+ * Not thread-safe - the samples of a counter are added one after the other.
+ */
+public class CounterRate {
+    static final long WRAP_32 = 1L << 32;
+
+    /** 10 Gbit/s - no Fritz.Box link transfers more */
+    private static final double MAX_PLAUSIBLE_RATE = 1.25e9;
+
+    private final long window;
+    private long[] times = new long[4];
+    private long[] values = new long[4];
+    /** index of the oldest sample */
+    private int head;
+    private int size;
+    /** the wraps so far - added to the raw values, so the samples are continuous */
+    private long offset;
+    private long lastRaw;
+
+    /**
+     * @param window the minimum time span the rate is averaged over, zero for the delta of the latest two samples
+     */
+    public CounterRate(final Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        this.window = window.toNanos();
+    }
+
+    /**
+     * @param captureNanos the {@link System#nanoTime()} the counter was captured
+     * @param counter the counter value
+     * @return the rate in units per second, or {@link Double#NaN} if it isn't known yet - i.e. for the first
+     *         sample and after a reset
+     */
+    public double update(final long captureNanos, final long counter) {
+        if (size > 0) {
+            final long lastTime = times[index(size - 1)];
+            if (captureNanos - lastTime <= 0) {
+                // duplicate or out of order sample
+                return rate();
+            }
+            if (counter < lastRaw) {
+                final long wrapped = counter + WRAP_32 - lastRaw;
+                final boolean was32Bit = lastRaw < WRAP_32 && lastRaw >= WRAP_32 / 4 * 3;
+                if (was32Bit && wrapped * 1e9 / (captureNanos - lastTime) <= MAX_PLAUSIBLE_RATE) {
+                    offset += WRAP_32;
+                } else {
+                    reset();
+                }
+            }
+        }
+        lastRaw = counter;
+        add(captureNanos, counter + offset);
+        return rate();
+    }
+
+    /**
+     * @return the rate of the samples so far, or {@link Double#NaN} if there are less than two
+     */
+    public double rate() {
+        if (size < 2) {
+            return Double.NaN;
+        }
+        final int last = index(size - 1);
+        // the newest sample, which is still at least the window before the latest one
+        int first = head;
+        for (int i = 1; i < size - 1; i++) {
+            final int idx = index(i);
+            if (times[last] - times[idx] < window) {
+                break;
+            }
+            first = idx;
+        }
+        return (values[last] - values[first]) * 1e9 / (times[last] - times[first]);
+    }
+
+    /**
+     * Forgets all samples, e.g. because the device was replaced
+     */
+    public void reset() {
+        head = size = 0;
+        offset = 0;
+    }
+
+    /**
+     * The increase of a counter between two samples, whose times aren't known - e.g. the bounds of
+     * stored buckets. Like in {@link #update}, a drop from the upper quarter of the 32-bit range is a
+     * wrap, but any other decrease is regarded as a reset to zero.
+     *
+     * @param previous the previous counter value
+     * @param counter the counter value
+     * @return the increase
+     */
+    static double increase(final double previous, final double counter) {
+        if (counter >= previous) {
+            return counter - previous;
+        }
+        final boolean was32Bit = previous < WRAP_32 && previous >= WRAP_32 / 4 * 3;
+        return was32Bit ? counter + WRAP_32 - previous : counter;
+    }
+
+    private void add(final long time, final long value) {
+        // drop samples, which aren't needed for the window anymore
+        while (size > 1 && time - times[index(1)] >= window) {
+            head = index(1);
+            size--;
+        }
+        if (size == times.length) {
+            grow();
+        }
+        final int idx = index(size++);
+        times[idx] = time;
+        values[idx] = value;
+    }
+
+    private void grow() {
+        final long[] newTimes = new long[times.length * 2];
+        final long[] newValues = new long[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimes[i] = times[index(i)];
+            newValues[i] = values[index(i)];
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+
+    private int index(final int i) {
+        return (head + i) % times.length;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes the due actions of a cycle tick under one shared deadline.
+ * <p>
+ * The actions are either fanned out concurrently or sent one after the other. Whatever completes
+ * before the deadline ends up in the snapshot, the stragglers are cancelled - which interrupts their
+ * blocking request - and reported as gaps. So a slow action delays neither the others nor the chart.
+ */
+final class CycleCoordinator {
+    private CycleCoordinator() {
+    }
+
+    /**
+     * @param snapshot the snapshot to fill
+     * @param due the due requests
+     * @param concurrent {@code true} to send all requests at once, {@code false} to send them back-to-back
+     * @param deadline the {@link System#nanoTime()} until the results need to be available
+     * @param executor the executor of the requests
+     * @throws InterruptedException if the cycle was cancelled
+     */
+    static void gather(final PollSnapshot snapshot, final List<FritzRequest<?>> due, final boolean concurrent,
+                       final long deadline, final ExecutorService executor) throws InterruptedException {
+        if (concurrent) {
+            scatter(snapshot, due, deadline, executor);
+        } else {
+            sequence(snapshot, due, deadline, executor);
+        }
+    }
+
+    private static void scatter(final PollSnapshot snapshot, final List<FritzRequest<?>> due,
+                                final long deadline, final ExecutorService executor) throws InterruptedException {
+        final List<Callable<Timed>> calls = new ArrayList<>(due.size());
+        for (FritzRequest<?> request : due) {
+            calls.add(() -> Timed.execute(request));
+        }
+        // cancels the unfinished calls when the deadline passes
+        final List<Future<Timed>> futures = executor.invokeAll(calls, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        for (int i = 0; i < futures.size(); i++) {
+            collect(snapshot, due.get(i), futures.get(i));
+        }
+    }
+
+    private static void sequence(final PollSnapshot snapshot, final List<FritzRequest<?>> due,
+                                 final long deadline, final ExecutorService executor) throws InterruptedException {
+        Exception unreachable = null;
+        for (FritzRequest<?> request : due) {
+            if (unreachable != null) {
+                // the device didn't answer the previous action - don't wait for the same timeout again
+                snapshot.addFailure(request, unreachable);
+                continue;
+            }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                snapshot.addGap(request);
+                continue;
+            }
+            final Future<Timed> future = executor.submit(() -> Timed.execute(request));
+            try {
+                future.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    unreachable = (IOException) ex.getCause();
+                }
+            } catch (InterruptedException ex) {
+                future.cancel(true);
+                throw ex;
+            }
+            collect(snapshot, request, future);
+        }
+    }
+
+    private static void collect(final PollSnapshot snapshot, final FritzRequest<?> request, final Future<Timed> future) {
+        if (future.isCancelled()) {
+            snapshot.addGap(request);
+            return;
+        }
+        try {
+            final Timed timed = future.get();
+            snapshot.addResponse(request, timed.response, timed.latency, timed.captured);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            snapshot.addFailure(request, (cause instanceof Exception) ? (Exception) cause : ex);
+        } catch (CancellationException | InterruptedException ex) {
+            snapshot.addGap(request);
+        }
+    }
+
+    /**
+     * A response with the time it took and the time it was received
+     */
+    private static final class Timed {
+        final Object response;
+        final long latency;
+        final long captured;
+
+        private Timed(final Object response, final long latency, final long captured) {
+            this.response = response;
+            this.latency = latency;
+            this.captured = captured;
+        }
+
+        static Timed execute(final FritzRequest<?> request) throws Exception {
+            final long start = System.nanoTime();
+            final Object response = request.execute();
+            // the response is parsed - so the sample is taken now, not when the cycle completes
+            final long captured = System.nanoTime();
+            return new Timed(response, captured - start, captured);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The routers polled by this process.
+ * <p>
+ * The registry is read from a text file with one device per line: {@code <name>=<control url>}, e.g.
+ * <pre>
+ * # branch offices
+ * berlin=http://10.1.0.1:49000/igdupnp/control/WANCommonIFC1
+ * hamburg=http://10.2.0.1:49000/igdupnp/control/WANCommonIFC1
+ * </pre>
+ * Empty lines and lines starting with {@code #} are ignored. The devices keep the order of the file.
+ */
+public class DeviceRegistry {
+    private final List<FritzDevice> devices;
+
+    private DeviceRegistry(final List<FritzDevice> devices) {
+        this.devices = Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * @return a registry with only the Fritz.Box at its default address
+     */
+    public static DeviceRegistry ofDefault() {
+        return new DeviceRegistry(List.of(FritzDevice.getDefault()));
+    }
+
+    /**
+     * @param arg either the control url of a single device or the path of a registry file
+     * @return the registry
+     * @throws IOException if the registry file can't be read
+     */
+    public static DeviceRegistry fromArgument(final String arg) throws IOException {
+        if (arg.startsWith("http://") || arg.startsWith("https://")) {
+            final URI url = URI.create(arg);
+            return new DeviceRegistry(List.of(new FritzDevice(url.getHost(), url)));
+        }
+        return load(Path.of(arg));
+    }
+
+    public static DeviceRegistry load(final Path file) throws IOException {
+        final List<FritzDevice> devices = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNo = 0;
+            for (String line; (line = br.readLine()) != null; ) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final int sep = line.indexOf('=');
+                if (sep <= 0) {
+                    throw new IOException(file + ":" + lineNo + ": expected <name>=<control url>");
+                }
+                final String name = line.substring(0, sep).trim();
+                if (devices.stream().anyMatch(d -> d.getName().equals(name))) {
+                    throw new IOException(file + ":" + lineNo + ": duplicate device " + name);
+                }
+                final URI url;
+                try {
+                    url = URI.create(line.substring(sep + 1).trim());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNo + ": invalid url", e);
+                }
+                devices.add(new FritzDevice(name, url));
+            }
+        }
+        if (devices.isEmpty()) {
+            throw new IOException(file + " doesn't contain any devices");
+        }
+        return new DeviceRegistry(devices);
+    }
+
+    public List<FritzDevice> getDevices() {
+        return devices;
+    }
+}
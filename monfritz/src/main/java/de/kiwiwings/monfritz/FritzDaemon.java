@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point, which polls the Fritz.Boxes without the JavaFX toolkit and writes the values to stdout.
+ * <p>
+ * Each response results in one line: {@code <ISO capture instant> <device> <action> <field>=<value> ...}
+ * <p>
+ * Usage: {@code java -cp monfritz.jar:... de.kiwiwings.monfritz.FritzDaemon [--store=<dir>] [control-url | devices-file]}
+ * <p>
+ * With {@code --store} the values are additionally recorded in a {@link TimeSeriesStore}.
+ *
+ * @see DeviceRegistry
+ */
+public class FritzDaemon {
+    private static final SoapProjection TRANSFER = SoapProjection.of(GetAddonInfosResponse.class,
+        "byteSendRate", "byteReceiveRate", "totalBytesSent", "totalBytesReceived");
+
+    private static final SoapProjection LIMITS = SoapProjection.of(GetCommonLinkPropertiesResponse.class,
+        "layer1UpstreamMaxBitRate", "layer1DownstreamMaxBitRate");
+
+    private final PrintStream out;
+
+    private FritzDaemon(final PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String source = null;
+        Path storeDir = null;
+        for (String arg : args) {
+            if (arg.startsWith("--store=")) {
+                storeDir = Paths.get(arg.substring("--store=".length()));
+            } else {
+                source = arg;
+            }
+        }
+        final DeviceRegistry registry = (source != null)
+            ? DeviceRegistry.fromArgument(source)
+            : DeviceRegistry.ofDefault();
+
+        final FritzDaemon daemon = new FritzDaemon(System.out);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            // the JVM halts after the hooks - give the main thread the chance to commit the store
+            try {
+                closed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        }));
+
+        try (TimeSeriesStore store = (storeDir != null) ? TimeSeriesStore.open(storeDir) : null;
+             PollEngine engine = new PollEngine()) {
+            final HistoryRecorder recorder = (store != null) ? new HistoryRecorder(store) : null;
+            for (FritzDevice device : registry.getDevices()) {
+                final PollCycle cycle = new PollCycle(device)
+                    .add(FritzRequest.getAddonInfos(device, TRANSFER), Duration.ofSeconds(1))
+                    .add(FritzRequest.getCommonLinkProperties(device, LIMITS), Duration.ofSeconds(10));
+                engine.schedule(cycle, snapshot -> {
+                    daemon.print(snapshot);
+                    if (recorder != null) {
+                        daemon.record(recorder, snapshot);
+                    }
+                });
+            }
+
+            stopped.await();
+        } finally {
+            closed.countDown();
+        }
+    }
+
+    private void record(final HistoryRecorder recorder, final PollSnapshot snapshot) {
+        try {
+            recorder.record(snapshot);
+        } catch (IOException ex) {
+            // keep polling - the values are still printed
+            PollEngine.LOG.log(System.Logger.Level.WARNING, "can't record " + snapshot.getDevice(), ex);
+        }
+    }
+
+    private void print(final PollSnapshot snapshot) {
+        final StringBuilder sb = new StringBuilder(256);
+        for (FritzRequest<?> request : snapshot.getRequests()) {
+            final ProjectedResponse response = (ProjectedResponse) snapshot.getResponse(request);
+            final SoapProjection proj = response.getProjection();
+            sb.append(snapshot.getCaptureTime(request)).append(' ').append(snapshot.getDevice()).append(' ').append(request.getAction());
+            for (int slot = 0; slot < proj.size(); slot++) {
+                if (response.isPresent(slot)) {
+                    sb.append(' ').append(proj.getField(slot)).append('=').append(response.getLong(slot));
+                }
+            }
+            sb.append(System.lineSeparator());
+        }
+        // the lines of the polling threads mustn't interleave
+        synchronized (out) {
+            out.print(sb);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.net.URI;
+
+/**
+ * A polled router, identified by a unique name which is used to tag its samples.
+ */
+public class FritzDevice {
+    private static final FritzDevice DEFAULT = new FritzDevice("fritz.box", FritzTransport.getDefault());
+
+    private final String name;
+    private final FritzTransport transport;
+
+    public FritzDevice(final String name, final URI controlUrl) {
+        this(name, new FritzTransport(controlUrl));
+    }
+
+    private FritzDevice(final String name, final FritzTransport transport) {
+        this.name = name;
+        this.transport = transport;
+    }
+
+    /**
+     * @return the device at the default address of the Fritz.Box
+     */
+    public static FritzDevice getDefault() {
+        return DEFAULT;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FritzTransport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
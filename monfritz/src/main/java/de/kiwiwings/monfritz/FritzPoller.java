@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import eu.hansolo.fx.smoothcharts.DoubleSeries;
+import eu.hansolo.fx.smoothcharts.SmoothedChart;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.control.CheckBox;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import javafx.util.StringConverter;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class FritzPoller extends Application {
+
+    enum Series {
+        sent, recv, sentMax, recvMax,
+        /** the maximum of a bucket - only charted in the high-frequency mode */
+        sentPeak, recvPeak
+    }
+
+    /**
+     * The chart only needs the counters, rates and limits - all other fields of the responses are skipped.
+     * The rates are derived from the counters, the router rates are only used if a firmware lacks the counters.
+     */
+    private static final SoapProjection TRANSFER = SoapProjection.of(GetAddonInfosResponse.class,
+        "totalBytesSent", "totalBytesReceived", "byteSendRate", "byteReceiveRate");
+    private static final int BYTES_SENT = TRANSFER.slot("totalBytesSent");
+    private static final int BYTES_RECEIVED = TRANSFER.slot("totalBytesReceived");
+    private static final int SEND_RATE = TRANSFER.slot("byteSendRate");
+    private static final int RECEIVE_RATE = TRANSFER.slot("byteReceiveRate");
+
+    private static final SoapProjection LIMITS = SoapProjection.of(GetCommonLinkPropertiesResponse.class,
+        "layer1UpstreamMaxBitRate", "layer1DownstreamMaxBitRate");
+    private static final int UPSTREAM_MAX = LIMITS.slot("layer1UpstreamMaxBitRate");
+    private static final int DOWNSTREAM_MAX = LIMITS.slot("layer1DownstreamMaxBitRate");
+
+    private final PollEngine pollEngine = new PollEngine();
+
+    private HistoryRecorder recorder;
+
+    /** replays recorded or generated samples instead of polling the devices */
+    private SampleReplay replay;
+
+    private final List<DeviceView> deviceViews = new ArrayList<>();
+
+    private SmoothedChart<Number, Number> chart;
+    private NumberAxis timeAxis;
+
+    /**
+     * The x values are the seconds since this monotonic anchor - so the points are placed by their capture time,
+     * independent of when they are delivered to the UI and of wall-clock adjustments.
+     */
+    private final long anchorNanos = System.nanoTime();
+    /**
+     * The wall-clock time of the anchor for the tick labels - in a replay, it's moved to the recorded time of
+     * the first sample, see {@link #anchorReplay}
+     */
+    private volatile Instant anchorTime = Instant.now();
+    private boolean replayAnchored;
+
+    private static final DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final int dataWindowInSec = 20;
+    /** the samples kept per series - independent of the number of points charted in the window */
+    private static final int dataLimit = 3600;
+    private long latestNanos = anchorNanos;
+    private double dataIntervalInSec = 1;
+    /** polls faster than this are aggregated into buckets of this width before being charted */
+    private static final Duration bucketWidth = Duration.ofSeconds(1);
+    private Duration rateWindow = Duration.ZERO;
+
+    @Override
+    public void init() throws Exception {
+        // --devices=<control url | devices file>, see DeviceRegistry
+        final Map<String, String> params = getParameters().getNamed();
+        final DeviceRegistry registry = params.containsKey("devices")
+            ? DeviceRegistry.fromArgument(params.get("devices"))
+            : DeviceRegistry.ofDefault();
+        // --store=<dir> records the polled values in a TimeSeriesStore
+        if (params.containsKey("store")) {
+            recorder = new HistoryRecorder(TimeSeriesStore.open(Paths.get(params.get("store"))));
+        }
+        // --replay=<daemon output file | synthetic> drives the chart without routers, --speed=<factor> accelerates it
+        if (params.containsKey("replay")) {
+            final String source = params.get("replay");
+            replay = "synthetic".equals(source) ? SampleReplay.synthetic(0) : SampleReplay.fromLog(Paths.get(source));
+            if (params.containsKey("speed")) {
+                replay.withSpeed(Double.parseDouble(params.get("speed")));
+            }
+        }
+        // --interval=<seconds> the poll interval of the transfer rates, below one second the polls are aggregated
+        if (params.containsKey("interval")) {
+            dataIntervalInSec = Double.parseDouble(params.get("interval"));
+        }
+        // --rateWindow=<seconds> the time span the derived rates are averaged over, default: between two polls
+        if (params.containsKey("rateWindow")) {
+            rateWindow = Duration.ofMillis((long)(Double.parseDouble(params.get("rateWindow"))*1000));
+        }
+
+        final NumberAxis na = new NumberAxis();
+        na.setLabel("bytes/sec");
+        timeAxis = new NumberAxis(-dataWindowInSec, 0, 2);
+        timeAxis.setLabel("time");
+        timeAxis.setTickLabelRotation(45);
+        timeAxis.setAutoRanging(false);
+        timeAxis.setForceZeroInRange(false);
+        timeAxis.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(final Number seconds) {
+                return timeFormat.format(anchorTime.plusNanos((long)(seconds.doubleValue() * 1e9)));
+            }
+
+            /**
+             * @return the seconds of the latest occurrence of the time of day before or at the chart window end,
+             *         or {@code null} if the label can't be parsed
+             */
+            @Override
+            public Number fromString(final String string) {
+                final LocalTime time;
+                try {
+                    time = LocalTime.parse(string, timeFormat);
+                } catch (DateTimeParseException ex) {
+                    return null;
+                }
+                final ZonedDateTime end = anchorTime.plusNanos(latestNanos - anchorNanos).atZone(timeFormat.getZone());
+                ZonedDateTime label = end.with(time);
+                if (label.isAfter(end)) {
+                    label = label.minusDays(1);
+                }
+                return Duration.between(anchorTime, label.toInstant()).toNanos() / 1e9;
+            }
+        });
+
+        chart = new SmoothedChart<>(timeAxis, na);
+        chart.setAnimated(false);
+        chart.setSmoothed(true);
+        chart.setChartType(SmoothedChart.ChartType.AREA);
+        chart.setChartPlotBackground(Color.rgb(31, 31, 31));
+        // --canvas draws the series on a canvas instead of path elements, e.g. for many devices with a long window
+        chart.setCanvasRendering(params.containsKey("canvas")
+            ? Boolean.parseBoolean(params.get("canvas"))
+            : getParameters().getUnnamed().contains("--canvas"));
+
+        final boolean multipleDevices = registry.getDevices().size() > 1;
+        for (FritzDevice device : registry.getDevices()) {
+            final DeviceView dv = new DeviceView(device, rateWindow);
+            for (Series s : Series.values()) {
+                if (!isHighFrequency() && (s == Series.sentPeak || s == Series.recvPeak)) {
+                    continue;
+                }
+                final String name = multipleDevices ? device.getName() + " " + s.name() : s.name();
+                dv.series.put(s, new DoubleSeries(name, dataLimit));
+                dv.samples.put(s, new SampleRing(dataLimit));
+            }
+            dv.toggle.setSelected(true);
+            dv.toggle.selectedProperty().addListener((o, oldVal, newVal) -> showDevice(dv, newVal));
+            showDevice(dv, true);
+            deviceViews.add(dv);
+        }
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws IOException {
+        for (DeviceView dv : deviceViews) {
+            final PollCycle cycle = new PollCycle(dv.device)
+                .add(dv.transfer, Duration.ofMillis((long)(dataIntervalInSec*1000)))
+                .add(dv.limits, Duration.ofSeconds(10))
+                // a slow limits request mustn't hold back the transfer rates of the same tick
+                .withConcurrentActions(true);
+            final SnapshotListener listener = snapshot -> {
+                if (replay != null) {
+                    anchorReplay(snapshot);
+                }
+                record(snapshot);
+                if (isHighFrequency()) {
+                    accumulateSnapshot(dv, snapshot);
+                } else {
+                    Platform.runLater(() -> addSnapshot(dv, snapshot));
+                }
+            };
+            if (replay != null) {
+                replay.schedule(cycle, listener);
+            } else {
+                pollEngine.schedule(cycle, listener);
+            }
+        }
+        if (replay != null) {
+            replay.start();
+        }
+
+        primaryStage.setTitle(replay != null ? "Mon-Fritz transfer stats (replay)" : "Mon-Fritz transfer stats");
+
+        BorderPane root = new BorderPane(chart);
+        if (deviceViews.size() > 1) {
+            final FlowPane devicePicker = new FlowPane(10, 5);
+            final ObservableList<Node> childList = devicePicker.getChildren();
+            deviceViews.forEach(dv -> childList.add(dv.toggle));
+            root.setTop(devicePicker);
+        }
+        primaryStage.setScene(new Scene(root, 600, 500));
+        primaryStage.show();
+
+    }
+
+    @Override
+    public void stop() {
+        if (replay != null) {
+            replay.close();
+        }
+        pollEngine.close();
+        if (recorder != null) {
+            recorder.getStore().close();
+        }
+    }
+
+    /**
+     * Records the snapshot on the polling thread
+     */
+    private void record(final PollSnapshot snapshot) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.record(snapshot);
+        } catch (IOException ex) {
+            PollEngine.LOG.log(System.Logger.Level.WARNING, "can't record " + snapshot.getDevice(), ex);
+        }
+    }
+
+    private void showDevice(final DeviceView dv, final boolean visible) {
+        if (visible) {
+            updateView(dv);
+        }
+        for (DoubleSeries ds : dv.series.values()) {
+            if (visible) {
+                chart.addSeries(ds);
+                chart.getStrokePath(ds.getSeries()).setStrokeWidth(3);
+            } else {
+                chart.removeSeries(ds);
+            }
+        }
+    }
+
+    /**
+     * Adds the values of all actions polled in the same tick at their capture time.
+     * Failed and missing actions add no point, so they are charted as gap instead of zero.
+     */
+    private void addSnapshot(final DeviceView dv, final PollSnapshot snapshot) {
+        final ProjectedResponse transfer = snapshot.getResponse(dv.transfer);
+        if (transfer != null) {
+            final long captured = snapshot.getCaptureNanos(dv.transfer);
+            addRate(dv, Series.recv, captured, transfer, BYTES_RECEIVED, RECEIVE_RATE, dv.recvRate);
+            addRate(dv, Series.sent, captured, transfer, BYTES_SENT, SEND_RATE, dv.sentRate);
+        }
+        addLimits(dv, snapshot);
+    }
+
+    private void addLimits(final DeviceView dv, final PollSnapshot snapshot) {
+        final ProjectedResponse limits = snapshot.getResponse(dv.limits);
+        if (limits != null && limits.isPresent(DOWNSTREAM_MAX) && limits.isPresent(UPSTREAM_MAX)) {
+            final long captured = snapshot.getCaptureNanos(dv.limits);
+            addData(dv, Series.recvMax, captured, limits.getLong(DOWNSTREAM_MAX)/8);
+            addData(dv, Series.sentMax, captured, limits.getLong(UPSTREAM_MAX)/8);
+        }
+        updateView();
+    }
+
+    /**
+     * High-frequency mode: aggregates the rates on the polling thread - the FX thread is only
+     * bothered, when a bucket is finished or the limits have been polled
+     */
+    private void accumulateSnapshot(final DeviceView dv, final PollSnapshot snapshot) {
+        final ProjectedResponse transfer = snapshot.getResponse(dv.transfer);
+        if (transfer != null && transfer.isPresent(BYTES_RECEIVED) && transfer.isPresent(BYTES_SENT)) {
+            final long captured = snapshot.getCaptureNanos(dv.transfer);
+            final double recv = dv.recvRate.update(captured, transfer.getLong(BYTES_RECEIVED));
+            final double sent = dv.sentRate.update(captured, transfer.getLong(BYTES_SENT));
+            boolean finished = false;
+            if (!Double.isNaN(recv)) {
+                finished |= dv.recvBuckets.add(captured, recv);
+            }
+            if (!Double.isNaN(sent)) {
+                finished |= dv.sentBuckets.add(captured, sent);
+            }
+            if (finished) {
+                // drained up to the capture time - in a replay, it's ahead of the system clock
+                Platform.runLater(() -> addBuckets(dv, captured));
+            }
+        }
+        if (snapshot.getResponse(dv.limits) != null) {
+            Platform.runLater(() -> addLimits(dv, snapshot));
+        }
+    }
+
+    private void addBuckets(final DeviceView dv, final long captured) {
+        dv.recvBuckets.drain(captured, b -> addBucket(dv, Series.recv, Series.recvPeak, b));
+        dv.sentBuckets.drain(captured, b -> addBucket(dv, Series.sent, Series.sentPeak, b));
+        updateView();
+    }
+
+    private void addBucket(final DeviceView dv, final Series mean, final Series peak, final BucketAccumulator.Bucket b) {
+        final long time = b.getStartNanos() + (b.getEndNanos() - b.getStartNanos()) / 2;
+        addData(dv, mean, time, b.getMean());
+        addData(dv, peak, time, b.getMax());
+    }
+
+    private boolean isHighFrequency() {
+        return dataIntervalInSec * 1e9 < bucketWidth.toNanos();
+    }
+
+    private void addRate(final DeviceView dv, final Series s, final long captured,
+                         final ProjectedResponse response, final int counterSlot, final int rateSlot, final CounterRate rate) {
+        if (response.isPresent(counterSlot)) {
+            final double value = rate.update(captured, response.getLong(counterSlot));
+            // the first sample and the one after a counter reset have no rate yet
+            if (!Double.isNaN(value)) {
+                addData(dv, s, captured, value);
+            }
+        } else if (response.isPresent(rateSlot)) {
+            addData(dv, s, captured, response.getLong(rateSlot));
+        }
+    }
+
+    private void addData(final DeviceView dv, final Series s, final long captured, final double value) {
+        // hidden devices are updated too, so their history is complete when they are shown again
+        dv.samples.get(s).add(captured, value);
+        if (captured - latestNanos > 0) {
+            latestNanos = captured;
+        }
+    }
+
+    /**
+     * Moves the time window to the latest sample and derives the points of the visible devices from their samples
+     */
+    private void updateView() {
+        timeAxis.setLowerBound(toSeconds(latestNanos) - dataWindowInSec);
+        timeAxis.setUpperBound(toSeconds(latestNanos));
+        for (DeviceView dv : deviceViews) {
+            if (dv.toggle.isSelected()) {
+                updateView(dv);
+            }
+        }
+    }
+
+    private void updateView(final DeviceView dv) {
+        final long lowerNanos = latestNanos - dataWindowInSec * 1_000_000_000L;
+        for (Map.Entry<Series, DoubleSeries> me : dv.series.entrySet()) {
+            final SampleRing samples = dv.samples.get(me.getKey());
+            final DoubleSeries points = me.getValue();
+
+            // keep one point left of the window, so the line enters the chart at its border
+            final int first = Math.max(0, samples.indexOf(lowerNanos) - 1);
+            final int count = samples.size() - first;
+
+            // the window only slides, so the points scrolled out are dropped and the new samples appended -
+            // the chart then only recalculates the spline at both ends
+            final double firstX = (count > 0) ? toSeconds(samples.getTime(first)) : Double.POSITIVE_INFINITY;
+            int scrolledOut = 0;
+            while (scrolledOut < points.size() && points.getX(scrolledOut) < firstX) {
+                scrolledOut++;
+            }
+            points.removeFirst(scrolledOut);
+            final int kept = points.size();
+            if (kept <= count && (kept == 0 || (points.getX(0) == firstX
+                && points.getX(kept - 1) == toSeconds(samples.getTime(first + kept - 1))))) {
+                for (int i = kept; i < count; i++) {
+                    points.add(toSeconds(samples.getTime(first + i)), samples.getValue(first + i));
+                }
+            } else {
+                // out of sync - the primitive points are overwritten in place, no objects per point
+                points.setSize(count);
+                for (int i = 0; i < count; i++) {
+                    points.set(i, toSeconds(samples.getTime(first + i)), samples.getValue(first + i));
+                }
+            }
+        }
+    }
+
+    /**
+     * The replay delivers the samples on a virtual clock, which starts with the first sample - so the tick labels
+     * show the recorded times instead of the time the replay was started.
+     * Called on the replay thread, which delivers the samples of all devices.
+     */
+    private void anchorReplay(final PollSnapshot snapshot) {
+        if (!replayAnchored) {
+            replayAnchored = true;
+            anchorTime = snapshot.getTime().minusNanos(snapshot.getTimeNanos() - anchorNanos);
+        }
+    }
+
+    private double toSeconds(final long nanoTime) {
+        return (nanoTime - anchorNanos) / 1e9;
+    }
+
+    /**
+     * The samples and the chart series of a device
+     */
+    private static class DeviceView {
+        final FritzDevice device;
+        final FritzRequest<ProjectedResponse> transfer;
+        final FritzRequest<ProjectedResponse> limits;
+        final CounterRate sentRate;
+        final CounterRate recvRate;
+        final BucketAccumulator sentBuckets = new BucketAccumulator(bucketWidth);
+        final BucketAccumulator recvBuckets = new BucketAccumulator(bucketWidth);
+        final Map<Series, SampleRing> samples = new EnumMap<>(Series.class);
+        final Map<Series, DoubleSeries> series = new EnumMap<>(Series.class);
+        final CheckBox toggle;
+
+        DeviceView(final FritzDevice device, final Duration rateWindow) {
+            this.device = device;
+            sentRate = new CounterRate(rateWindow);
+            recvRate = new CounterRate(rateWindow);
+            transfer = FritzRequest.getAddonInfos(device, TRANSFER);
+            limits = FritzRequest.getCommonLinkProperties(device, LIMITS);
+            toggle = new CheckBox(device.getName());
+        }
+    }
+
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
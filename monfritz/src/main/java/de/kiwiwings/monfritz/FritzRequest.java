@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A SOAP action including the parser of its response.
+ * <p>
+ * Requests are immutable and can be executed repeatedly and concurrently - they are polled
+ * by the {@link PollEngine}, which is shared by the JavaFX {@link FritzPoller} and the
+ * headless {@link FritzDaemon}.
+ *
+ * @param <T> the response class
+ */
+public class FritzRequest<T> {
+    private final FritzDevice device;
+    private final String ifcAction;
+    private final SoapResponseParser<T> parser;
+
+    public static FritzRequest<GetAddonInfosResponse> getAddonInfos(FritzDevice device) {
+        return of(device, GetAddonInfosResponse.class, "GetAddonInfos");
+    }
+
+    public static FritzRequest<ProjectedResponse> getAddonInfos(FritzDevice device, SoapProjection projection) {
+        return of(device, projection, "GetAddonInfos");
+    }
+
+    public static FritzRequest<GetCommonLinkPropertiesResponse> getCommonLinkProperties(FritzDevice device) {
+        return of(device, GetCommonLinkPropertiesResponse.class, "GetCommonLinkProperties");
+    }
+
+    public static FritzRequest<ProjectedResponse> getCommonLinkProperties(FritzDevice device, SoapProjection projection) {
+        return of(device, projection, "GetCommonLinkProperties");
+    }
+
+    private static <T> FritzRequest<T> of(FritzDevice device, Class<T> responseClass, String ifcAction) {
+        return new FritzRequest<>(device, ifcAction, SoapParsers.forClass(responseClass));
+    }
+
+    private static FritzRequest<ProjectedResponse> of(FritzDevice device, SoapProjection projection, String ifcAction) {
+        return new FritzRequest<>(device, ifcAction, projection);
+    }
+
+
+    private FritzRequest(FritzDevice device, String ifcAction, SoapResponseParser<T> parser) {
+        this.device = device;
+        this.ifcAction = ifcAction;
+        this.parser = parser;
+    }
+
+    public FritzDevice getDevice() {
+        return device;
+    }
+
+    public String getAction() {
+        return ifcAction;
+    }
+
+    SoapResponseParser<T> getParser() {
+        return parser;
+    }
+
+    /**
+     * Sends the request and parses the response
+     *
+     * @return the response
+     * @throws IOException if the router can't be reached or answers with an error
+     * @throws XMLStreamException if the response can't be parsed
+     * @throws InterruptedException if the poll was cancelled
+     */
+    public T execute() throws IOException, XMLStreamException, InterruptedException {
+        try (InputStream is = device.getTransport().post(ifcAction)) {
+            XMLStreamReader xsr = SoapParsers.getInputFactory().createXMLStreamReader(is);
+            xsr.nextTag(); // Advance to Envelope tag
+            xsr.nextTag(); // Advance to Body tag
+            xsr.nextTag(); // Advance to getNumberResponse tag
+
+            return parser.parse(xsr);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-lived SOAP transport to the TR-064 / IGD UPnP control endpoint of a Fritz.Box.
+ * <p>
+ * There's one transport per device, but all of them share one {@link HttpClient}, which keeps a pool of
+ * HTTP/1.1 connections per host alive and reuses them for subsequent requests - so a fleet of routers
+ * doesn't need a selector thread per device. The request for each action - envelope, headers and
+ * timeout - is encoded once and cached, as {@link HttpRequest} instances are immutable.
+ * <p>
+ * The timeout of a request only covers the wait for the response headers. The small response
+ * envelopes are therefore read completely within a deadline for the whole exchange, so a box,
+ * which stalls in the middle of the body, can't block a polling thread.
+ */
+public class FritzTransport {
+    static final String DEFAULT_URL = "http://192.168.178.1:49000/igdupnp/control/WANCommonIFC1";
+
+    static final String SERVICE_TYPE = "urn:schemas-upnp-org:service:WANCommonInterfaceConfig:1";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final String requestTmpl =
+        "<?xml version=\"1.0\"?>\n" +
+        "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"\n" +
+        "        s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">\n" +
+        "  <s:Body>\n" +
+        "    <u:%s xmlns:u=\"" + SERVICE_TYPE + "\"/>\n" +
+        "  </s:Body>\n" +
+        "</s:Envelope>";
+
+    // the boxes only speak HTTP/1.1 - avoid the h2c upgrade attempt on every new connection
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+
+    private static final FritzTransport DEFAULT = new FritzTransport(URI.create(DEFAULT_URL));
+
+    private final URI controlUrl;
+    private final Duration timeout;
+    private final Map<String, HttpRequest> requests = new ConcurrentHashMap<>();
+
+    public FritzTransport(final URI controlUrl) {
+        this(controlUrl, REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param controlUrl the control endpoint
+     * @param timeout the deadline of an exchange, from sending the request to the end of the response body
+     */
+    FritzTransport(final URI controlUrl, final Duration timeout) {
+        this.controlUrl = controlUrl;
+        this.timeout = timeout;
+    }
+
+    public static FritzTransport getDefault() {
+        return DEFAULT;
+    }
+
+    public URI getControlUrl() {
+        return controlUrl;
+    }
+
+    /**
+     * Sends the SOAP action and returns the response body.
+     * The body was read completely, so the connection is already back in the pool.
+     *
+     * @param ifcAction the action name, e.g. "GetAddonInfos"
+     * @return the response body
+     * @throws IOException if the router can't be reached, times out or answers with an error status
+     * @throws InterruptedException if the polling thread was interrupted while waiting for the response
+     */
+    public InputStream post(final String ifcAction) throws IOException, InterruptedException {
+        final HttpRequest request = requests.computeIfAbsent(ifcAction, this::createRequest);
+        final CompletableFuture<HttpResponse<byte[]>> exchange = CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        final HttpResponse<byte[]> response;
+        try {
+            response = exchange.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            exchange.cancel(true);
+            throw new HttpTimeoutException("Action " + ifcAction + " timed out after " + timeout.toMillis() + " ms");
+        } catch (InterruptedException ex) {
+            exchange.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Action " + ifcAction + " failed", cause);
+        }
+        final int status = response.statusCode();
+        if (status != 200) {
+            throw new IOException("Action " + ifcAction + " failed with HTTP status " + status);
+        }
+        return new ByteArrayInputStream(response.body());
+    }
+
+    private HttpRequest createRequest(final String ifcAction) {
+        final byte[] body = String.format(requestTmpl, ifcAction).getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(controlUrl)
+            .timeout(timeout)
+            .header("Content-Type", "text/xml; charset=\"utf-8\"")
+            .header("SOAPACTION", SERVICE_TYPE + "#" + ifcAction)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+    }
+}
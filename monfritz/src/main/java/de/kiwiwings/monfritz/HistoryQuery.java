@@ -0,0 +1,648 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import de.kiwiwings.monfritz.SeriesRollup.Aggregate;
+import de.kiwiwings.monfritz.SeriesRollup.Resolution;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates the stored history of a field in steps over a time range - e.g. the daily traffic of
+ * a month for all routers, or the 95th percentile of the receive rate.
+ * <p>
+ * The range of each device is split into chunks, which are scanned in parallel on a fork-join pool.
+ * Each chunk yields partial aggregates of its steps, which are merged in time order. If the range
+ * and the step are multiples of a minute or an hour, the chunks are read from the {@link SeriesRollup rollups} -
+ * except for percentiles and the latest samples, which aren't rolled up yet.
+ * <p>
+ * Besides minimum, maximum, average and count of the samples, the query calculates:
+ * <ul>
+ * <li>{@link Aggregation#PERCENTILE} - from a log histogram with a relative error below 3%</li>
+ * <li>{@link Aggregation#TOTAL} - the increase of a counter like {@code totalBytesReceived}, with
+ *     32-bit wraps and resets detected like in {@link CounterRate}</li>
+ * <li>{@link Aggregation#UTILIZATION} - the rate of a byte counter relative to the
+ *     {@code layer1*MaxBitRate} of its direction, between 0 and 1</li>
+ * </ul>
+ * The query is immutable - the {@code with} methods return modified copies.
+ */
+public final class HistoryQuery {
+    public enum Aggregation {
+        MIN, MAX, AVG, COUNT, PERCENTILE, TOTAL, UTILIZATION
+    }
+
+    /** the range, which is scanned by one task - 6 hours are 21600 raw samples at one poll per second */
+    private static final long CHUNK_MS = TimeUnit.HOURS.toMillis(6);
+
+    /** the limits of the byte counters, for the utilization */
+    private static final Map<String, String> MAX_BIT_RATES = Map.of(
+        "totalBytesReceived", "layer1DownstreamMaxBitRate",
+        "totalBytesSent", "layer1UpstreamMaxBitRate");
+
+    private final TimeSeriesStore store;
+    private final String field;
+    private final long from;
+    private final long to;
+    private final long step;
+    private final Aggregation aggregation;
+    private final double percentile;
+    private final List<String> devices;
+    private final ForkJoinPool pool;
+
+    private HistoryQuery(final TimeSeriesStore store, final String field, final long from, final long to, final long step,
+                         final Aggregation aggregation, final double percentile, final List<String> devices, final ForkJoinPool pool) {
+        this.store = store;
+        this.field = field;
+        this.from = from;
+        this.to = to;
+        this.step = step;
+        this.aggregation = aggregation;
+        this.percentile = percentile;
+        this.devices = devices;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a query of the average in a single step over all devices of the store
+     *
+     * @param store the store
+     * @param field the field of the polled responses, e.g. {@code totalBytesReceived}
+     * @param from the start of the range in epoch milliseconds, inclusive
+     * @param to the end of the range in epoch milliseconds, exclusive
+     * @return the query
+     */
+    public static HistoryQuery of(final TimeSeriesStore store, final String field, final long from, final long to) {
+        if (to <= from) {
+            throw new IllegalArgumentException("empty range");
+        }
+        return new HistoryQuery(store, field, from, to, to - from, Aggregation.AVG, 0, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param step the length of a step, the last step may be truncated by the end of the range
+     * @return a copy of the query with the given step
+     */
+    public HistoryQuery withStep(final Duration step) {
+        final long ms = step.toMillis();
+        if (ms <= 0 || (to - from) / ms >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid step " + step);
+        }
+        return new HistoryQuery(store, field, from, to, ms, aggregation, percentile, devices, pool);
+    }
+
+    /**
+     * @param aggregation the aggregation - use {@link #withPercentile(double)} for percentiles
+     * @return a copy of the query with the given aggregation
+     */
+    public HistoryQuery withAggregation(final Aggregation aggregation) {
+        if (aggregation == Aggregation.PERCENTILE) {
+            throw new IllegalArgumentException("percentiles need a rank");
+        }
+        if (aggregation == Aggregation.UTILIZATION && !MAX_BIT_RATES.containsKey(field)) {
+            throw new IllegalArgumentException("no utilization of " + field);
+        }
+        return new HistoryQuery(store, field, from, to, step, aggregation, 0, devices, pool);
+    }
+
+    /**
+     * @param percentile the percentile in the range (0, 100], e.g. 95
+     * @return a copy of the query of the percentile
+     */
+    public HistoryQuery withPercentile(final double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]");
+        }
+        return new HistoryQuery(store, field, from, to, step, Aggregation.PERCENTILE, percentile, devices, pool);
+    }
+
+    /**
+     * @param devices the devices to query, by default all devices of the store
+     * @return a copy of the query with the given devices
+     */
+    public HistoryQuery withDevices(final FritzDevice... devices) {
+        final List<String> names = new ArrayList<>();
+        for (FritzDevice device : devices) {
+            names.add(HistoryRecorder.getSeriesPrefix(device));
+        }
+        return new HistoryQuery(store, field, from, to, step, aggregation, percentile, Collections.unmodifiableList(names), pool);
+    }
+
+    /**
+     * @param pool the pool, which scans the chunks - by default the common pool
+     * @return a copy of the query with the given pool
+     */
+    public HistoryQuery withPool(final ForkJoinPool pool) {
+        return new HistoryQuery(store, field, from, to, step, aggregation, percentile, devices, pool);
+    }
+
+    /**
+     * Runs the query
+     *
+     * @return the results by the series prefix of the devices - see {@link HistoryRecorder#getSeriesPrefix}
+     * @throws IOException if a series can't be opened
+     * @throws InterruptedException if the thread was interrupted while waiting for the chunks
+     */
+    public Map<String, Result> execute() throws IOException, InterruptedException {
+        final List<String> prefixes = (devices != null) ? devices : findDevices();
+
+        // plan the chunks of all devices first, so the pool works on all of them at once
+        final List<Callable<Steps>> tasks = new ArrayList<>();
+        final int[] bounds = new int[prefixes.size() * 2 + 1];
+        for (int i = 0; i < prefixes.size(); i++) {
+            final String prefix = prefixes.get(i);
+            plan(store.rollup(prefix + field), aggregation, tasks);
+            bounds[2 * i + 1] = tasks.size();
+            if (aggregation == Aggregation.UTILIZATION) {
+                plan(store.rollup(prefix + MAX_BIT_RATES.get(field)), Aggregation.AVG, tasks);
+            }
+            bounds[2 * i + 2] = tasks.size();
+        }
+
+        final List<Future<Steps>> chunks = pool.invokeAll(tasks);
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (int i = 0; i < prefixes.size(); i++) {
+            final Partial[] steps = merge(chunks.subList(bounds[2 * i], bounds[2 * i + 1]));
+            final double[] values;
+            if (aggregation == Aggregation.UTILIZATION) {
+                final double[] rates = evaluate(steps, Aggregation.UTILIZATION);
+                final double[] limits = evaluate(merge(chunks.subList(bounds[2 * i + 1], bounds[2 * i + 2])), Aggregation.AVG);
+                values = new double[rates.length];
+                for (int s = 0; s < values.length; s++) {
+                    // bytes per second to the bits per second of the link
+                    values[s] = (limits[s] > 0) ? rates[s] * 8 / limits[s] : Double.NaN;
+                }
+            } else {
+                values = evaluate(steps, aggregation);
+            }
+            final String prefix = prefixes.get(i);
+            results.put(prefix.substring(0, prefix.length() - 1), new Result(from, step, values));
+        }
+        return results;
+    }
+
+    private List<String> findDevices() throws IOException {
+        final List<String> prefixes = new ArrayList<>();
+        final String suffix = "/" + field;
+        for (String name : store.getSeriesNames()) {
+            if (name.endsWith(suffix)) {
+                prefixes.add(name.substring(0, name.length() - field.length()));
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Splits the range of a series into chunks - the raw samples before the rollups, the rolled up part
+     * and the raw samples, which aren't rolled up yet
+     */
+    private void plan(final SeriesRollup series, final Aggregation agg, final List<Callable<Steps>> tasks) {
+        final StoredSeries raw = series.getSeries();
+        final long first = raw.getFirstTime();
+        if (first < 0) {
+            return;
+        }
+        final long end = Math.min(to, raw.getLatestTime() + 1);
+        final boolean histogram = (agg == Aggregation.PERCENTILE);
+        long start = Math.max(from, first);
+        long seedFrom = start;
+
+        final Resolution res = selectResolution(agg);
+        if (res != Resolution.RAW) {
+            final long width = res.getWidth();
+            final long rollupStart = Math.floorDiv(start + width - 1, width) * width;
+            final long rollupEnd = Math.min(series.getRollupEnd(res), Math.floorDiv(end, width) * width);
+            if (rollupStart < rollupEnd) {
+                planRaw(raw, start, start, rollupStart, histogram, tasks);
+                tasks.add(() -> scanRollup(series, res, rollupStart, rollupEnd));
+                start = rollupEnd;
+                // look back into the last bucket for the predecessor of the increase
+                seedFrom = rollupEnd - width;
+            }
+        }
+        planRaw(raw, seedFrom, start, end, histogram, tasks);
+    }
+
+    private void planRaw(final StoredSeries raw, final long seedFrom, final long start, final long end,
+                         final boolean histogram, final List<Callable<Steps>> tasks) {
+        long chunkSeed = seedFrom;
+        for (long lo = start; lo < end; lo += CHUNK_MS) {
+            final long seed = chunkSeed;
+            final long chunkFrom = lo;
+            final long chunkTo = Math.min(end, lo + CHUNK_MS);
+            tasks.add(() -> scanRaw(raw, seed, chunkFrom, chunkTo, histogram));
+            // the following chunks are merged with the predecessor
+            chunkSeed = chunkTo;
+        }
+    }
+
+    /**
+     * @return the coarsest rollup, whose buckets don't span steps
+     */
+    private Resolution selectResolution(final Aggregation agg) {
+        if (agg != Aggregation.PERCENTILE) {
+            final boolean singleStep = (step >= to - from);
+            for (Resolution res : new Resolution[]{ Resolution.HOUR, Resolution.MINUTE }) {
+                if (singleStep || (step % res.getWidth() == 0 && Math.floorMod(from, res.getWidth()) == 0)) {
+                    return res;
+                }
+            }
+        }
+        return Resolution.RAW;
+    }
+
+    private Steps scanRaw(final StoredSeries raw, final long seedFrom, final long lo, final long hi, final boolean histogram) {
+        final Steps steps = new Steps(stepOf(lo), stepOf(hi - 1));
+        raw.scan(seedFrom, hi, (time, value) -> {
+            if (time < lo) {
+                steps.seed = value;
+            } else {
+                steps.get(stepOf(time), histogram).add(time, value);
+            }
+        });
+        return steps;
+    }
+
+    private Steps scanRollup(final SeriesRollup series, final Resolution res, final long lo, final long hi) {
+        final Steps steps = new Steps(stepOf(lo), stepOf(hi - 1));
+        final Buckets buckets = new Buckets();
+        series.scan(res, Aggregate.COUNT, lo, hi, buckets::add);
+        series.scan(res, Aggregate.MIN, lo, hi, buckets.join(buckets.mins));
+        series.scan(res, Aggregate.MAX, lo, hi, buckets.join(buckets.maxs));
+        series.scan(res, Aggregate.AVG, lo, hi, buckets.join(buckets.avgs));
+        series.scan(res, Aggregate.INCREASE, lo, hi, buckets.join(buckets.increases));
+        for (int i = 0; i < buckets.size; i++) {
+            final long time = buckets.times[i];
+            steps.get(stepOf(time), false).addBucket(time, res.getWidth(), buckets.mins[i], buckets.maxs[i], buckets.avgs[i], buckets.counts[i], buckets.increases[i]);
+        }
+        return steps;
+    }
+
+    private int stepOf(final long time) {
+        return (int) ((time - from) / step);
+    }
+
+    private Partial[] merge(final List<Future<Steps>> chunks) throws InterruptedException {
+        final Partial[] merged = new Partial[(int) ((to - from - 1) / step) + 1];
+        for (Future<Steps> f : chunks) {
+            final Steps chunk;
+            try {
+                chunk = f.get();
+            } catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+            for (int i = 0; i < chunk.parts.length; i++) {
+                final Partial p = chunk.parts[i];
+                if (p != null) {
+                    final int idx = chunk.first + i;
+                    merged[idx] = (merged[idx] == null) ? p : merged[idx].merge(p);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private double[] evaluate(final Partial[] steps, final Aggregation agg) {
+        final double[] values = new double[steps.length];
+        Partial prev = null;
+        for (int i = 0; i < steps.length; i++) {
+            final Partial p = steps[i];
+            if (p == null) {
+                values[i] = (agg == Aggregation.COUNT || agg == Aggregation.TOTAL) ? 0 : Double.NaN;
+                continue;
+            }
+            // the increase since the previous step belongs to this one
+            final double total = p.total + ((prev == null) ? 0 : Partial.increase(prev.lastValue, p.firstValue));
+            switch (agg) {
+                case MIN:
+                    values[i] = p.min;
+                    break;
+                case MAX:
+                    values[i] = p.max;
+                    break;
+                case AVG:
+                    values[i] = p.sum / p.count;
+                    break;
+                case COUNT:
+                    values[i] = p.count;
+                    break;
+                case PERCENTILE:
+                    values[i] = p.percentile(percentile);
+                    break;
+                case TOTAL:
+                    values[i] = total;
+                    break;
+                case UTILIZATION: {
+                    // the rate over the time covered by the increase
+                    final long start = (prev == null) ? p.firstTime : prev.lastTime;
+                    values[i] = (p.lastTime > start) ? total * 1000 / (p.lastTime - start) : Double.NaN;
+                    break;
+                }
+            }
+            prev = p;
+        }
+        return values;
+    }
+
+    /**
+     * The aggregated values of a query for one device
+     */
+    public static final class Result {
+        private final long from;
+        private final long step;
+        private final double[] values;
+
+        private Result(final long from, final long step, final double[] values) {
+            this.from = from;
+            this.step = step;
+            this.values = values;
+        }
+
+        /**
+         * @return the number of steps
+         */
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * @param index the index of the step
+         * @return the start of the step in epoch milliseconds
+         */
+        public long getTime(final int index) {
+            return from + index * step;
+        }
+
+        /**
+         * @param index the index of the step
+         * @return the aggregated value, {@link Double#NaN} if there are no samples in the step - {@code 0} for totals and counts
+         */
+        public double getValue(final int index) {
+            return values[index];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+
+    /**
+     * The partial aggregates of the steps of a chunk
+     */
+    private static final class Steps {
+        final int first;
+        final Partial[] parts;
+        /** the sample before the chunk, if it was looked up */
+        double seed = Double.NaN;
+
+        Steps(final int first, final int last) {
+            this.first = first;
+            this.parts = new Partial[last - first + 1];
+        }
+
+        Partial get(final int step, final boolean histogram) {
+            Partial p = parts[step - first];
+            if (p == null) {
+                p = parts[step - first] = new Partial(histogram);
+                p.predecessor = seed;
+                seed = Double.NaN;
+            }
+            return p;
+        }
+    }
+
+    /**
+     * The aggregate of the samples of a step in a chunk - partials of consecutive chunks are merged
+     */
+    private static final class Partial {
+        /** sub-buckets per power of two - the relative error of the percentiles is below 1/32 */
+        private static final int SUB_BITS = 5;
+        private static final int MIN_EXPONENT = -16;
+        private static final int MAX_EXPONENT = 63;
+
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        /** the increase of the value as counter within the partial */
+        double total;
+        long firstTime;
+        /** the first value, {@link Double#NaN} if the increase to the predecessor is already in the total */
+        double firstValue;
+        long lastTime;
+        /** the last value, {@link Double#NaN} for rolled up buckets */
+        double lastValue;
+        /** the sample before the partial, which was looked up */
+        double predecessor = Double.NaN;
+
+        /** the log histogram, covering the buckets from the offset */
+        int[] histogram;
+        int histogramOffset;
+
+        Partial(final boolean histogram) {
+            this.histogram = histogram ? new int[0] : null;
+        }
+
+        void add(final long time, final double value) {
+            if (count == 0) {
+                firstTime = time;
+                firstValue = Double.isNaN(predecessor) ? value : Double.NaN;
+                total += increase(predecessor, value);
+            } else {
+                total += increase(lastValue, value);
+            }
+            lastTime = time;
+            lastValue = value;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (histogram != null) {
+                addToHistogram(bucketOf(value), 1);
+            }
+        }
+
+        /**
+         * Adds a rolled up bucket - its increase includes the increase since the previous bucket
+         */
+        void addBucket(final long time, final long width, final double bucketMin, final double bucketMax, final double bucketAvg,
+                       final double bucketCount, final double bucketIncrease) {
+            if (count == 0) {
+                firstTime = time;
+                firstValue = Double.NaN;
+            }
+            total += bucketIncrease;
+            lastTime = time + width;
+            lastValue = Double.NaN;
+            count += (long) bucketCount;
+            sum += bucketAvg * bucketCount;
+            min = Math.min(min, bucketMin);
+            max = Math.max(max, bucketMax);
+        }
+
+        /**
+         * @param later the partial of the following chunk
+         * @return this partial with the samples of the later one
+         */
+        Partial merge(final Partial later) {
+            if (later.count == 0) {
+                return this;
+            }
+            if (count == 0) {
+                return later;
+            }
+            total += increase(lastValue, later.firstValue) + later.total;
+            lastTime = later.lastTime;
+            lastValue = later.lastValue;
+            count += later.count;
+            sum += later.sum;
+            min = Math.min(min, later.min);
+            max = Math.max(max, later.max);
+            if (histogram != null) {
+                for (int i = 0; i < later.histogram.length; i++) {
+                    if (later.histogram[i] != 0) {
+                        addToHistogram(later.histogramOffset + i, later.histogram[i]);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return the increase between partials, zero if it's unknown or already included
+         */
+        static double increase(final double previous, final double value) {
+            return (Double.isNaN(previous) || Double.isNaN(value)) ? 0 : CounterRate.increase(previous, value);
+        }
+
+        double percentile(final double percentile) {
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return valueOf(histogramOffset + i);
+                }
+            }
+            return max;
+        }
+
+        private void addToHistogram(final int bucket, final int n) {
+            if (histogram.length == 0) {
+                histogram = new int[8];
+                histogramOffset = bucket;
+            } else if (bucket < histogramOffset) {
+                final int[] grown = new int[histogram.length + histogramOffset - bucket];
+                System.arraycopy(histogram, 0, grown, histogramOffset - bucket, histogram.length);
+                histogram = grown;
+                histogramOffset = bucket;
+            } else if (bucket - histogramOffset >= histogram.length) {
+                histogram = Arrays.copyOf(histogram, Math.max(bucket - histogramOffset + 1, histogram.length * 2));
+            }
+            histogram[bucket - histogramOffset] += n;
+        }
+
+        /**
+         * @return the bucket of the value - zero for zero, negative and tiny values
+         */
+        private static int bucketOf(final double value) {
+            if (!(value > 0)) {
+                return 0;
+            }
+            final int exponent = Math.getExponent(value);
+            if (exponent < MIN_EXPONENT) {
+                return 0;
+            }
+            if (exponent > MAX_EXPONENT) {
+                return 1 + ((MAX_EXPONENT - MIN_EXPONENT + 1) << SUB_BITS) - 1;
+            }
+            final int sub = (int) (Double.doubleToRawLongBits(value) >>> (52 - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return 1 + (((exponent - MIN_EXPONENT) << SUB_BITS) | sub);
+        }
+
+        /**
+         * @return the center of the bucket
+         */
+        private static double valueOf(final int bucket) {
+            if (bucket == 0) {
+                return 0;
+            }
+            final int exponent = ((bucket - 1) >> SUB_BITS) + MIN_EXPONENT;
+            final int sub = (bucket - 1) & ((1 << SUB_BITS) - 1);
+            return Math.scalb(1 + (sub + 0.5) / (1 << SUB_BITS), exponent);
+        }
+    }
+
+    /**
+     * The rolled up buckets of a chunk, joined by their times
+     */
+    private static final class Buckets {
+        long[] times = new long[64];
+        double[] counts = new double[64];
+        double[] mins = new double[64];
+        double[] maxs = new double[64];
+        double[] avgs = new double[64];
+        double[] increases = new double[64];
+        int size;
+
+        void add(final long time, final double count) {
+            if (size == times.length) {
+                final int len = size * 2;
+                times = Arrays.copyOf(times, len);
+                counts = Arrays.copyOf(counts, len);
+                mins = Arrays.copyOf(mins, len);
+                maxs = Arrays.copyOf(maxs, len);
+                avgs = Arrays.copyOf(avgs, len);
+                increases = Arrays.copyOf(increases, len);
+            }
+            times[size] = time;
+            counts[size] = count;
+            size++;
+        }
+
+        /**
+         * @param values the array of the aggregate
+         * @return the consumer, which sets the aggregate of the buckets - an aggregate may be ahead
+         *         of the count, if the store was interrupted while writing a bucket
+         */
+        SampleConsumer join(final double[] values) {
+            final int[] cursor = { 0 };
+            return (time, value) -> {
+                while (cursor[0] < size && times[cursor[0]] < time) {
+                    cursor[0]++;
+                }
+                if (cursor[0] < size && times[cursor[0]] == time) {
+                    values[cursor[0]++] = value;
+                }
+            };
+        }
+    }
+}
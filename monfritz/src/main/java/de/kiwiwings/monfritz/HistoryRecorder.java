@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the polled values in a {@link TimeSeriesStore}.
+ * <p>
+ * Each field of a {@link ProjectedResponse} is stored as series {@code <device>/<field>} at the
+ * capture time of the response, e.g. {@code fritz.box/totalBytesReceived}. Rates are derived
+ * from the counters when the history is read, so the raw values are stored as polled. The rollups
+ * of the series are updated along with them.
+ * Responses of other types aren't recorded.
+ * <p>
+ * The recorder is called on the polling threads - the store is committed to the disk at most
+ * once per {@link #FORCE_INTERVAL_MS}, the samples in between are only in the mapping.
+ */
+public class HistoryRecorder {
+    static final long FORCE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TimeSeriesStore store;
+    private volatile long lastForce = System.currentTimeMillis();
+
+    public HistoryRecorder(final TimeSeriesStore store) {
+        this.store = store;
+    }
+
+    public TimeSeriesStore getStore() {
+        return store;
+    }
+
+    /**
+     * @param snapshot the polled values
+     * @throws IOException if a series can't be written
+     */
+    public void record(final PollSnapshot snapshot) throws IOException {
+        for (FritzRequest<?> request : snapshot.getRequests()) {
+            final Object response = snapshot.getResponse(request);
+            if (!(response instanceof ProjectedResponse)) {
+                continue;
+            }
+            final ProjectedResponse pr = (ProjectedResponse) response;
+            final SoapProjection proj = pr.getProjection();
+            final long time = snapshot.getCaptureTime(request).toEpochMilli();
+            final String device = getSeriesPrefix(snapshot.getDevice());
+            for (int slot = 0; slot < proj.size(); slot++) {
+                if (pr.isPresent(slot)) {
+                    store.rollup(device + proj.getField(slot)).append(time, pr.getLong(slot));
+                }
+            }
+        }
+
+        final long now = System.currentTimeMillis();
+        if (now - lastForce >= FORCE_INTERVAL_MS) {
+            lastForce = now;
+            store.force();
+        }
+    }
+
+    /**
+     * @param device the device
+     * @return the prefix of the series names of the device, i.e. its name as file name followed by {@code /}
+     */
+    public static String getSeriesPrefix(final FritzDevice device) {
+        final String name = device.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return (name.startsWith(".") || name.startsWith("-") ? "_" + name.substring(1) : name) + "/";
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Process-wide cache of the JAXB binding, used for responses without a generated parser.
+ * <p>
+ * A {@link JAXBContext} is thread-safe and expensive to build, so there's one per response class.
+ * {@link Unmarshaller}s aren't thread-safe and are too expensive to create per poll. As the polls of
+ * different actions and devices run concurrently, they are pooled per class and borrowed for a single parse.
+ */
+final class JaxbRegistry {
+    private static final Map<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Queue<Unmarshaller>> UNMARSHALLERS = new ConcurrentHashMap<>();
+
+    private JaxbRegistry() {
+    }
+
+    /**
+     * Creates the contexts upfront, so the first poll doesn't pay for them
+     *
+     * @param responseClasses the classes to bind
+     */
+    static void preload(final Class<?>... responseClasses) {
+        for (Class<?> rc : responseClasses) {
+            getContext(rc);
+        }
+    }
+
+    static JAXBContext getContext(final Class<?> responseClass) {
+        return CONTEXTS.computeIfAbsent(responseClass, rc -> {
+            try {
+                return JAXBContext.newInstance(rc);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Can't bind " + rc.getName(), e);
+            }
+        });
+    }
+
+    /**
+     * @param responseClass the bound class
+     * @return an unmarshaller for the exclusive use of the caller, to be handed back via {@link #release}
+     */
+    static Unmarshaller borrowUnmarshaller(final Class<?> responseClass) {
+        final Unmarshaller pooled = pool(responseClass).poll();
+        if (pooled != null) {
+            return pooled;
+        }
+        try {
+            return getContext(responseClass).createUnmarshaller();
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Can't create unmarshaller for " + responseClass.getName(), e);
+        }
+    }
+
+    static void release(final Class<?> responseClass, final Unmarshaller unmarshaller) {
+        pool(responseClass).offer(unmarshaller);
+    }
+
+    private static Queue<Unmarshaller> pool(final Class<?> responseClass) {
+        return UNMARSHALLERS.computeIfAbsent(responseClass, rc -> new ConcurrentLinkedQueue<>());
+    }
+}
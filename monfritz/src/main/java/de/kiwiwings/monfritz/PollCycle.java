@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The actions polled from one device, each with its own interval.
+ * <p>
+ * The cycle is scheduled with the greatest common divisor of the intervals as tick. On each tick the
+ * due actions are polled and their results are delivered together as a single {@link PollSnapshot}.
+ * <p>
+ * By default the actions are sent back-to-back, so they reuse the one kept-alive connection to the device
+ * instead of competing for it. Alternatively they are fanned out concurrently. Either way the tick has a
+ * deadline - by default 80% of the tick - and actions which haven't completed by then are cancelled and
+ * reported as gaps, see {@link CycleCoordinator}.
+ * <p>
+ * Each action adapts its interval to failures and slow responses independently according to
+ * the {@link BackoffPolicy} of the cycle - an action with an open circuit just isn't due.
+ */
+public class PollCycle {
+    private final FritzDevice device;
+    private final List<Entry> entries = new ArrayList<>();
+    private long tick;
+    private long deadline;
+    private boolean concurrent;
+    private BackoffPolicy backoff = BackoffPolicy.DEFAULT;
+
+    public PollCycle(final FritzDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * Adds an action to the cycle - the cycle needs to be complete before it's scheduled.
+     *
+     * @param request the request of the device
+     * @param period the poll interval of the request
+     * @return this cycle
+     */
+    public PollCycle add(final FritzRequest<?> request, final Duration period) {
+        if (request.getDevice() != device) {
+            throw new IllegalArgumentException("the request belongs to " + request.getDevice());
+        }
+        final long nanos = period.toNanos();
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        entries.add(new Entry(request, nanos, backoff));
+        tick = (tick == 0) ? nanos : gcd(tick, nanos);
+        return this;
+    }
+
+    /**
+     * @param deadline the time after the start of a tick, until the results of the tick need to be available.
+     *                 Defaults to 80% of the tick.
+     * @return this cycle
+     */
+    public PollCycle withDeadline(final Duration deadline) {
+        if (deadline.isNegative() || deadline.isZero()) {
+            throw new IllegalArgumentException("deadline must be positive");
+        }
+        this.deadline = deadline.toNanos();
+        return this;
+    }
+
+    /**
+     * @param concurrent {@code true} to send the due actions at once, {@code false} to send them back-to-back
+     * @return this cycle
+     */
+    public PollCycle withConcurrentActions(final boolean concurrent) {
+        this.concurrent = concurrent;
+        return this;
+    }
+
+    /**
+     * @param backoff the adaption of the intervals to failures and slow responses,
+     *                defaults to {@link BackoffPolicy#DEFAULT}
+     * @return this cycle
+     */
+    public PollCycle withBackoff(final BackoffPolicy backoff) {
+        this.backoff = backoff;
+        entries.forEach(e -> e.state = backoff.newState(e.toString(), e.period));
+        return this;
+    }
+
+    public FritzDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * @return the interval in which the cycle checks for due actions
+     */
+    public Duration getTick() {
+        if (tick == 0) {
+            throw new IllegalStateException("the cycle has no actions");
+        }
+        return Duration.ofNanos(tick);
+    }
+
+    /**
+     * @return the requests of the cycle with their poll intervals
+     */
+    Map<FritzRequest<?>, Duration> getPeriods() {
+        final Map<FritzRequest<?>, Duration> periods = new LinkedHashMap<>();
+        entries.forEach(e -> periods.put(e.request, Duration.ofNanos(e.period)));
+        return periods;
+    }
+
+    /**
+     * Polls the actions, which are due at the given time.
+     * The cycle isn't thread-safe - the engine makes sure, it's only executed once at a time.
+     *
+     * @param now the {@link System#nanoTime()} of the tick
+     * @param executor the executor of the requests
+     * @return the snapshot, or {@code null} if no action was due or the cycle was cancelled
+     */
+    PollSnapshot execute(final long now, final ExecutorService executor) {
+        final List<Entry> dueEntries = new ArrayList<>(entries.size());
+        final List<FritzRequest<?>> due = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            // allow some jitter of the scheduler, otherwise an action might slip to the next tick
+            if (e.nextDue - now > tick / 2) {
+                continue;
+            }
+            e.nextDue += e.period;
+            if (e.nextDue - now <= 0) {
+                e.nextDue += ((now - e.nextDue) / e.period + 1) * e.period;
+            }
+            e.state.probe();
+            dueEntries.add(e);
+            due.add(e.request);
+        }
+        if (due.isEmpty()) {
+            return null;
+        }
+
+        final PollSnapshot snapshot = new PollSnapshot(device);
+        try {
+            CycleCoordinator.gather(snapshot, due, concurrent, now + (deadline > 0 ? deadline : tick / 5 * 4), executor);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        for (Entry e : dueEntries) {
+            final boolean steady = e.state.isSteady();
+            final long next = (snapshot.getResponse(e.request) != null)
+                ? e.state.succeeded(now, snapshot.getLatencyNanos(e.request))
+                : e.state.failed(now, snapshot.getFailures().get(e.request));
+            // steady actions keep the fixed rate of the ticks
+            if (!steady || !e.state.isSteady()) {
+                e.nextDue = next;
+            }
+        }
+        return snapshot;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            final long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        return device + " cycle";
+    }
+
+    private static class Entry {
+        final FritzRequest<?> request;
+        final long period;
+        long nextDue = System.nanoTime();
+        BackoffPolicy.State state;
+
+        Entry(final FritzRequest<?> request, final long period, final BackoffPolicy backoff) {
+            this.request = request;
+            this.period = period;
+            this.state = backoff.newState(toString(), period);
+        }
+
+        @Override
+        public String toString() {
+            return request.getDevice() + " " + request.getAction();
+        }
+    }
+}
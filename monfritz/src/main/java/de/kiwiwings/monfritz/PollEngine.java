@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Toolkit-independent scheduler for {@link FritzRequest}s.
+ * <p>
+ * A single scheduler thread keeps the polls ordered by their next deadline and hands each due poll
+ * to a cached pool of daemon threads. The pool grows to the number of concurrently running polls -
+ * mostly blocked on the routers - and reuses idle threads, so the number of scheduled requests isn't
+ * bound by a fixed pool size.
+ * <p>
+ * The engine schedules single requests or {@link PollCycle}s, which combine the actions of a device.
+ * Each of them keeps its own fixed rate. If a poll is still running when its next deadline is due,
+ * that slot is skipped and reported as overrun - the same poll is never executed concurrently.
+ * While a device fails or responds slowly, its actions back off according to their {@link BackoffPolicy}.
+ */
+public class PollEngine implements AutoCloseable {
+    static final System.Logger LOG = System.getLogger(PollEngine.class.getName());
+
+    private final ExecutorService executor = createExecutor();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queueChanged = lock.newCondition();
+    private final PriorityQueue<PollHandle> queue = new PriorityQueue<>((a, b) -> Long.signum(a.deadline - b.deadline));
+    private final Thread scheduler;
+    private volatile boolean closed;
+
+    public PollEngine() {
+        scheduler = new Thread(this::runScheduler, "fritz-poll-scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * Polls the request periodically with the {@link BackoffPolicy#DEFAULT default backoff}, starting immediately
+     *
+     * @param request the request
+     * @param period the poll interval
+     * @param listener the receiver of the responses, failures and overruns
+     * @param <T> the response class
+     * @return the handle to cancel the polling and to query its statistics
+     */
+    public <T> PollHandle schedule(final FritzRequest<T> request, final Duration period, final PollListener<T> listener) {
+        return schedule(request, period, BackoffPolicy.DEFAULT, listener);
+    }
+
+    /**
+     * Polls the request periodically, starting immediately
+     *
+     * @param request the request
+     * @param period the poll interval
+     * @param backoff the adaption of the interval to failures and slow responses
+     * @param listener the receiver of the responses, failures and overruns
+     * @param <T> the response class
+     * @return the handle to cancel the polling and to query its statistics
+     */
+    public <T> PollHandle schedule(final FritzRequest<T> request, final Duration period, final BackoffPolicy backoff,
+                                   final PollListener<T> listener) {
+        final BackoffPolicy.State state = backoff.newState(request.getDevice() + " " + request.getAction(), period.toNanos());
+        final Job job = new Job() {
+            @Override
+            public long run(final long start) {
+                state.probe();
+                final T response;
+                try {
+                    response = request.execute();
+                } catch (InterruptedException ex) {
+                    return start;
+                } catch (Exception ex) {
+                    final long next = state.failed(start, ex);
+                    listener.onFailure(request, ex);
+                    return next;
+                }
+                final long next = state.succeeded(start, System.nanoTime() - start);
+                listener.onSuccess(request, response);
+                return next;
+            }
+
+            @Override
+            public void overrun(final long overruns) {
+                listener.onOverrun(request, overruns);
+            }
+
+            @Override
+            public String toString() {
+                return request.getDevice() + " " + request.getAction();
+            }
+        };
+        return schedule(job, period);
+    }
+
+    /**
+     * Polls the due actions of the cycle on each of its ticks, starting immediately
+     *
+     * @param cycle the cycle
+     * @param listener the receiver of the snapshots and overruns
+     * @return the handle to cancel the polling and to query its statistics
+     */
+    public PollHandle schedule(final PollCycle cycle, final SnapshotListener listener) {
+        final Job job = new Job() {
+            @Override
+            public long run(final long start) {
+                final PollSnapshot snapshot = cycle.execute(start, executor);
+                if (snapshot != null) {
+                    listener.onSnapshot(snapshot);
+                    snapshot.getFailures().forEach((request, ex) -> listener.onFailure(snapshot, request, ex));
+                    snapshot.getGaps().forEach(request -> listener.onGap(snapshot, request));
+                }
+                // the actions of the cycle back off individually
+                return start;
+            }
+
+            @Override
+            public void overrun(final long overruns) {
+                listener.onOverrun(cycle, overruns);
+            }
+
+            @Override
+            public String toString() {
+                return cycle.toString();
+            }
+        };
+        return schedule(job, cycle.getTick());
+    }
+
+    private PollHandle schedule(final Job job, final Duration period) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        final PollHandle handle = new PollHandle(job, period.toNanos(), System.nanoTime());
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("engine is closed");
+            }
+            queue.add(handle);
+            queueChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+        return handle;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.interrupt();
+        executor.shutdownNow();
+    }
+
+    private void runScheduler() {
+        lock.lock();
+        try {
+            while (!closed) {
+                final PollHandle next = queue.peek();
+                if (next == null) {
+                    queueChanged.await();
+                    continue;
+                }
+                final long now = System.nanoTime();
+                final long wait = next.deadline - now;
+                if (wait > 0) {
+                    queueChanged.awaitNanos(wait);
+                    continue;
+                }
+                queue.poll();
+                if (next.cancelled) {
+                    continue;
+                }
+                next.fire(now);
+                queue.add(next);
+            }
+        } catch (InterruptedException ignored) {
+            // closed
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        final AtomicInteger threadNo = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            final Thread t = new Thread(r, "fritz-poll-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The unit of work of a schedule - runs on the executor, the overruns are reported on the scheduler thread
+     */
+    private interface Job {
+        /**
+         * @param start the {@link System#nanoTime()} the poll was started
+         * @return the earliest start of the next poll - deadlines before are skipped silently
+         */
+        long run(long start);
+
+        void overrun(long overruns);
+    }
+
+    /**
+     * A scheduled request or cycle
+     */
+    public final class PollHandle {
+        private final Job job;
+        private final long period;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        private final AtomicLong polls = new AtomicLong();
+        private final AtomicLong overruns = new AtomicLong();
+        // guarded by the engine lock
+        private long deadline;
+        private volatile long notBefore;
+        private volatile boolean cancelled;
+
+        private PollHandle(final Job job, final long period, final long start) {
+            this.job = job;
+            this.period = period;
+            this.deadline = start;
+            this.notBefore = start;
+        }
+
+        public Duration getPeriod() {
+            return Duration.ofNanos(period);
+        }
+
+        /**
+         * @return the number of executed polls
+         */
+        public long getPollCount() {
+            return polls.get();
+        }
+
+        /**
+         * @return the number of deadlines, which were skipped because the previous poll was still running
+         */
+        public long getOverrunCount() {
+            return overruns.get();
+        }
+
+        /**
+         * Stops the polling - a running poll is finished and reported
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void fire(final long now) {
+            if (notBefore - now > period / 2) {
+                // backing off
+            } else if (inFlight.compareAndSet(false, true)) {
+                polls.incrementAndGet();
+                try {
+                    executor.execute(() -> poll(now));
+                } catch (RuntimeException ex) {
+                    // rejected - the engine is closing
+                    inFlight.set(false);
+                }
+            } else {
+                job.overrun(overruns.incrementAndGet());
+            }
+
+            // fixed rate - if the scheduler lagged behind, continue with the next slot in the future
+            deadline += period;
+            if (deadline - now <= 0) {
+                deadline += ((now - deadline) / period + 1) * period;
+            }
+        }
+
+        private void poll(final long start) {
+            try {
+                notBefore = job.run(start);
+            } finally {
+                inFlight.set(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job + " every " + TimeUnit.NANOSECONDS.toMillis(period) + " ms";
+        }
+    }
+}
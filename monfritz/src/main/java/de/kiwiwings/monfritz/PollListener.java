@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+/**
+ * Receives the outcome of the polls scheduled with the {@link PollEngine}.
+ * The results are reported on the polling thread, the overruns on the scheduler thread.
+ *
+ * @param <T> the response class
+ */
+@FunctionalInterface
+public interface PollListener<T> {
+    void onSuccess(FritzRequest<T> request, T response);
+
+    /**
+     * Called for each failed poll. The default only logs on debug level - the {@link BackoffPolicy}
+     * already logs when the device starts failing and when it recovers.
+     *
+     * @param request the request
+     * @param ex the cause
+     */
+    default void onFailure(FritzRequest<T> request, Exception ex) {
+        PollEngine.LOG.log(System.Logger.Level.DEBUG, "{0} {1} failed: {2}", request.getDevice(), request.getAction(), ex);
+    }
+
+    /**
+     * Called when the previous poll was still running at the next deadline, i.e. it took
+     * longer than the period. The deadline is skipped. Implementations need to return quickly.
+     *
+     * @param request the request
+     * @param overruns the number of overruns so far
+     */
+    default void onOverrun(FritzRequest<T> request, long overruns) {
+        PollEngine.LOG.log(System.Logger.Level.WARNING, "{0} {1} took longer than its period - {2} overrun(s)",
+            request.getDevice(), request.getAction(), overruns);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results of the actions, which were polled together in one tick of a {@link PollCycle}.
+ * <p>
+ * Each due action either has a response, a failure or - if it didn't complete before the deadline
+ * of the tick - is a gap. Consumers must not substitute a value for failures and gaps.
+ */
+public class PollSnapshot {
+    private final FritzDevice device;
+    /** the wall-clock anchor of the monotonic capture times */
+    private final Instant time;
+    private final long timeNanos;
+    private final Map<FritzRequest<?>, Object> responses = new LinkedHashMap<>();
+    private final Map<FritzRequest<?>, Exception> failures = new LinkedHashMap<>();
+    private final Set<FritzRequest<?>> gaps = new LinkedHashSet<>();
+    private final Map<FritzRequest<?>, Long> latencies = new LinkedHashMap<>();
+    private final Map<FritzRequest<?>, Long> captures = new LinkedHashMap<>();
+
+    PollSnapshot(final FritzDevice device) {
+        this(device, Instant.now(), System.nanoTime());
+    }
+
+    /**
+     * @param device the device
+     * @param time the wall-clock time of the cycle
+     * @param timeNanos the monotonic counterpart of the time - e.g. a virtual clock of a {@link SampleReplay}
+     */
+    PollSnapshot(final FritzDevice device, final Instant time, final long timeNanos) {
+        this.device = device;
+        this.time = time;
+        this.timeNanos = timeNanos;
+    }
+
+    public FritzDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * @return the start of the cycle
+     */
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the start of the cycle - the monotonic counterpart of {@link #getTime()}
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * @param request the request
+     * @return the {@link System#nanoTime()} the response was received - only defined for requests with a response
+     */
+    public long getCaptureNanos(final FritzRequest<?> request) {
+        final Long nanos = captures.get(request);
+        if (nanos == null) {
+            throw new IllegalArgumentException(request.getAction() + " has no response");
+        }
+        return nanos;
+    }
+
+    /**
+     * @param request the request
+     * @return the wall-clock time the response was received, or {@code null} if there's no response
+     */
+    public Instant getCaptureTime(final FritzRequest<?> request) {
+        final Long nanos = captures.get(request);
+        return (nanos == null) ? null : time.plusNanos(nanos - timeNanos);
+    }
+
+    /**
+     * @return the requests, which were polled successfully
+     */
+    public Set<FritzRequest<?>> getRequests() {
+        return Collections.unmodifiableSet(responses.keySet());
+    }
+
+    /**
+     * @param request the request
+     * @param <T> the response class
+     * @return the response, or {@code null} if the request wasn't due, failed or is a gap
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getResponse(final FritzRequest<T> request) {
+        return (T) responses.get(request);
+    }
+
+    /**
+     * @param request the request
+     * @return the time between sending the request and parsing its response, or {@code null} if there's no response
+     */
+    public Duration getLatency(final FritzRequest<?> request) {
+        final Long nanos = latencies.get(request);
+        return (nanos == null) ? null : Duration.ofNanos(nanos);
+    }
+
+    /**
+     * @return the failed requests with their cause
+     */
+    public Map<FritzRequest<?>, Exception> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return the requests, which were cancelled at the deadline of the tick
+     */
+    public Set<FritzRequest<?>> getGaps() {
+        return Collections.unmodifiableSet(gaps);
+    }
+
+    /**
+     * @param request the request
+     * @return {@code true}, if the request was due in this tick, but didn't provide a response
+     */
+    public boolean isMissing(final FritzRequest<?> request) {
+        return failures.containsKey(request) || gaps.contains(request);
+    }
+
+    /**
+     * @return {@code true}, if all due requests provided a response
+     */
+    public boolean isComplete() {
+        return failures.isEmpty() && gaps.isEmpty();
+    }
+
+    void addResponse(final FritzRequest<?> request, final Object response, final long latencyNanos, final long captureNanos) {
+        responses.put(request, response);
+        latencies.put(request, latencyNanos);
+        captures.put(request, captureNanos);
+    }
+
+    long getLatencyNanos(final FritzRequest<?> request) {
+        return latencies.getOrDefault(request, 0L);
+    }
+
+    void addFailure(final FritzRequest<?> request, final Exception cause) {
+        failures.put(request, cause);
+    }
+
+    void addGap(final FritzRequest<?> request) {
+        gaps.add(request);
+    }
+}
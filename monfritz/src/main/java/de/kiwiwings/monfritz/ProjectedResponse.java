@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+/**
+ * Values of a {@link SoapProjection}, stored in primitive slots.
+ * A slot is only present, if the router sent a valid value for it.
+ */
+public class ProjectedResponse {
+    private final SoapProjection projection;
+    private final long[] values;
+    private long present;
+
+    ProjectedResponse(final SoapProjection projection) {
+        this.projection = projection;
+        values = new long[projection.size()];
+    }
+
+    public SoapProjection getProjection() {
+        return projection;
+    }
+
+    public boolean isPresent(final int slot) {
+        return (present & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return {@code true}, if no value was received - e.g. because the poll failed
+     */
+    public boolean isEmpty() {
+        return present == 0;
+    }
+
+    public long getLong(final int slot) {
+        return values[slot];
+    }
+
+    public int getInt(final int slot) {
+        return (int) values[slot];
+    }
+
+    public boolean getBoolean(final int slot) {
+        return values[slot] != 0;
+    }
+
+    void set(final int slot, final long value) {
+        values[slot] = value;
+        present |= (1L << slot);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming decoder of a block written by {@link SampleBlockEncoder}.
+ * <p>
+ * The decoder reads directly from the - usually memory-mapped, big-endian - buffer, a word
+ * at a time, and is reused for the blocks of a scan:
+ * <pre>
+ * decoder.reset(buffer, offset, count);
+ * while (decoder.next()) {
+ *     use(decoder.getTime(), decoder.getValue());
+ * }
+ * </pre>
+ */
+final class SampleBlockDecoder {
+    private ByteBuffer buffer;
+    private int offset;
+    private long bitPos;
+    private int remaining;
+    private boolean first;
+
+    private long time;
+    private long delta;
+    private long bits;
+    private int leading;
+    private int trailing;
+
+    /**
+     * @param buffer the buffer containing the block
+     * @param offset the absolute start of the block in the buffer
+     * @param count the number of samples in the block
+     */
+    void reset(final ByteBuffer buffer, final int offset, final int count) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.remaining = count;
+        bitPos = 0;
+        first = true;
+    }
+
+    /**
+     * Decodes the next sample
+     *
+     * @return {@code false}, if the block has no more samples
+     */
+    boolean next() {
+        if (remaining == 0) {
+            return false;
+        }
+        remaining--;
+        if (first) {
+            first = false;
+            time = readBits(64);
+            bits = readBits(64);
+            delta = 0;
+            leading = -1;
+        } else {
+            readTime();
+            readValue();
+        }
+        return true;
+    }
+
+    private void readTime() {
+        final long dod;
+        if (readBits(1) == 0) {
+            dod = 0;
+        } else if (readBits(1) == 0) {
+            dod = readBits(7) - 63;
+        } else if (readBits(1) == 0) {
+            dod = readBits(9) - 255;
+        } else if (readBits(1) == 0) {
+            dod = readBits(12) - 2047;
+        } else {
+            dod = readBits(64);
+        }
+        delta += dod;
+        time += delta;
+    }
+
+    private void readValue() {
+        if (readBits(1) == 0) {
+            return;
+        }
+        if (readBits(1) == 0) {
+            final long zigzag = readBits((int) readBits(6));
+            final long diff = (zigzag >>> 1) ^ -(zigzag & 1);
+            bits = Double.doubleToRawLongBits((long) Double.longBitsToDouble(bits) + diff);
+            return;
+        }
+        if (readBits(1) == 1) {
+            leading = (int) readBits(5);
+            int meaningful = (int) readBits(6);
+            if (meaningful == 0) {
+                meaningful = 64;
+            }
+            trailing = 64 - leading - meaningful;
+        }
+        bits ^= readBits(64 - leading - trailing) << trailing;
+    }
+
+    private long readBits(final int bitCount) {
+        if (bitCount > 56) {
+            final long high = readBits(bitCount - 32);
+            return (high << 32) | readBits(32);
+        }
+        if (bitCount == 0) {
+            return 0;
+        }
+        final int index = offset + (int) (bitPos >>> 3);
+        final int shift = (int) (bitPos & 7);
+        bitPos += bitCount;
+        if (index + 8 <= buffer.limit()) {
+            // the bits are within the next (big-endian) word
+            return (buffer.getLong(index) << shift) >>> (64 - bitCount);
+        }
+        // the end of the buffer - byte by byte
+        long value = 0;
+        for (int i = 0; i < 8 && index + i < buffer.limit(); i++) {
+            value |= (buffer.get(index + i) & 0xFFL) << (56 - 8 * i);
+        }
+        return (value << shift) >>> (64 - bitCount);
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    double getValue() {
+        return Double.longBitsToDouble(bits);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import java.util.Arrays;
+
+/**
+ * Streaming encoder of a compressed block of samples, in the style of Facebook's Gorilla.
+ * <p>
+ * The first sample is stored verbatim. The following timestamps are encoded as delta-of-delta in
+ * buckets of 1, 9, 12, 16 or 68 bits - samples at a constant interval cost a single bit. The values
+ * are encoded as:
+ * <ul>
+ * <li>{@code 0} - unchanged, e.g. the bit rate limits</li>
+ * <li>{@code 10} - integral values, e.g. the byte counters, as zigzag delta with a 6 bit length</li>
+ * <li>{@code 110} - the XOR with the previous value, fitting into the previous bit window</li>
+ * <li>{@code 111} - the XOR with a new window of 5 bits leading zeros and 6 bits length</li>
+ * </ul>
+ * Timestamps need to be ascending, the values are reproduced bit-exact. A block holds up to
+ * {@link #MAX_SAMPLES} samples and is decoded with {@link SampleBlockDecoder}.
+ */
+final class SampleBlockEncoder {
+    static final int MAX_SAMPLES = 1024;
+
+    /** integral values up to this magnitude are delta encoded */
+    static final long MAX_INTEGRAL = 1L << 53;
+
+    private byte[] buf = new byte[256];
+    private int bitPos;
+    private int count;
+
+    private long firstTime;
+    private long prevTime;
+    private long prevDelta;
+    private long prevBits;
+    private int prevLeading;
+    private int prevTrailing;
+
+    /**
+     * Adds a sample to the block
+     *
+     * @param time the time, which must be after the previous one
+     * @param value the value
+     * @return {@code false}, if the block is full and the sample wasn't added
+     */
+    boolean add(final long time, final double value) {
+        if (count == MAX_SAMPLES) {
+            return false;
+        }
+        final long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTime = time;
+            writeBits(time, 64);
+            writeBits(bits, 64);
+            prevDelta = 0;
+            prevLeading = -1;
+        } else {
+            writeTime(time);
+            writeValue(value, bits);
+        }
+        prevTime = time;
+        prevBits = bits;
+        count++;
+        return true;
+    }
+
+    private void writeTime(final long time) {
+        final long delta = time - prevTime;
+        final long dod = delta - prevDelta;
+        prevDelta = delta;
+        if (dod == 0) {
+            writeBits(0b0, 1);
+        } else if (-63 <= dod && dod <= 64) {
+            writeBits(0b10, 2);
+            writeBits(dod + 63, 7);
+        } else if (-255 <= dod && dod <= 256) {
+            writeBits(0b110, 3);
+            writeBits(dod + 255, 9);
+        } else if (-2047 <= dod && dod <= 2048) {
+            writeBits(0b1110, 4);
+            writeBits(dod + 2047, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(final double value, final long bits) {
+        if (bits == prevBits) {
+            writeBits(0b0, 1);
+            return;
+        }
+
+        final long prevLong = (long) Double.longBitsToDouble(prevBits);
+        final long lv = (long) value;
+        if (isIntegral(lv, bits) && isIntegral(prevLong, prevBits)) {
+            final long delta = lv - prevLong;
+            final long zigzag = (delta << 1) ^ (delta >> 63);
+            final int len = 64 - Long.numberOfLeadingZeros(zigzag);
+            writeBits(0b10, 2);
+            writeBits(len, 6);
+            writeBits(zigzag, len);
+            return;
+        }
+
+        final long xor = bits ^ prevBits;
+        final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        final int trailing = Long.numberOfTrailingZeros(xor);
+        if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+            writeBits(0b110, 3);
+            writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+        } else {
+            final int meaningful = 64 - leading - trailing;
+            writeBits(0b111, 3);
+            writeBits(leading, 5);
+            // 64 meaningful bits are written as 0
+            writeBits(meaningful & 63, 6);
+            writeBits(xor >>> trailing, meaningful);
+            prevLeading = leading;
+            prevTrailing = trailing;
+        }
+    }
+
+    /**
+     * @return {@code true}, if the value is a whole number, which is delta encoded
+     */
+    static boolean isIntegral(final long lv, final long bits) {
+        // excludes fractions, -0.0, NaN and the infinities
+        return -MAX_INTEGRAL < lv && lv < MAX_INTEGRAL && Double.doubleToRawLongBits(lv) == bits;
+    }
+
+    private void writeBits(final long value, final int bitCount) {
+        if (bitPos + bitCount > buf.length * 8L) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, (bitPos + bitCount + 7) / 8));
+        }
+        int n = bitCount;
+        while (n > 0) {
+            final int free = 8 - (bitPos & 7);
+            final int take = Math.min(free, n);
+            final int b = (int) (value >>> (n - take)) & ((1 << take) - 1);
+            buf[bitPos >>> 3] |= (byte) (b << (free - take));
+            bitPos += take;
+            n -= take;
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    long getFirstTime() {
+        return firstTime;
+    }
+
+    long getLastTime() {
+        return prevTime;
+    }
+
+    /**
+     * @return the length of the encoded block in bytes
+     */
+    int getLength() {
+        return (bitPos + 7) >>> 3;
+    }
+
+    /**
+     * @return the encoded block - the buffer is reused after {@link #reset()}
+     */
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Clears the block for the next samples
+     */
+    void reset() {
+        Arrays.fill(buf, 0, getLength(), (byte) 0);
+        bitPos = 0;
+        count = 0;
+    }
+}
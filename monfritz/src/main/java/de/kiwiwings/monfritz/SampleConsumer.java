@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+/**
+ * Receives the samples of a time series, e.g. when a {@link StoredSeries} is scanned
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+    /**
+     * @param time the time of the sample, for stored series in epoch milliseconds
+     * @param value the value of the sample
+     */
+    void accept(long time, double value);
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Replays recorded samples into the listeners of poll cycles - instead of a {@link PollEngine} polling
+ * the routers. The samples come from the captured output of the {@link FritzDaemon} or from a seeded,
+ * synthetic generator, so the chart can be driven reproducibly and without any router.
+ * <p>
+ * The samples are delivered on the replay thread at their recorded pace, accelerated by the
+ * {@link #withSpeed(double) speed}. Each sample is a snapshot with a single response. Its capture time
+ * is the recorded instant, and its monotonic capture nanos are on a virtual clock, which keeps the
+ * recorded intervals - so rates and charts are identical at any speed.
+ * <p>
+ * Only requests with a {@link SoapProjection} are replayed, the samples of unknown devices and
+ * actions are skipped. The devices are matched by name.
+ */
+public class SampleReplay implements AutoCloseable {
+    private static final System.Logger LOG = System.getLogger(SampleReplay.class.getName());
+
+    private final Path log;
+    private final long seed;
+    private double speed = 1;
+    private final List<Registration> registrations = new ArrayList<>();
+    private Thread thread;
+    private volatile boolean closed;
+
+    private SampleReplay(final Path log, final long seed) {
+        this.log = log;
+        this.seed = seed;
+    }
+
+    /**
+     * @param log the captured output of the {@link FritzDaemon}
+     * @return the replay of the captured samples
+     */
+    public static SampleReplay fromLog(final Path log) {
+        return new SampleReplay(log, 0);
+    }
+
+    /**
+     * The generated transfer rates wander around a slowly changing base load with occasional bursts
+     * close to the link limits. The counters wrap at 32 bits like on older firmwares.
+     *
+     * @param seed the seed of the generator - the same seed generates the same samples
+     * @return the endless replay of generated samples
+     */
+    public static SampleReplay synthetic(final long seed) {
+        return new SampleReplay(null, seed);
+    }
+
+    /**
+     * @param speed the speed-up of the replay, e.g. {@code 1} for the recorded pace or {@code 1000}
+     *              to replay a quarter of an hour per second
+     * @return this replay
+     */
+    public SampleReplay withSpeed(final double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * Registers a cycle - all cycles need to be registered before the replay is started.
+     *
+     * @param cycle the cycle, whose requests are replayed
+     * @param listener the receiver of the snapshots
+     */
+    public synchronized void schedule(final PollCycle cycle, final SnapshotListener listener) {
+        if (thread != null) {
+            throw new IllegalStateException("the replay has already been started");
+        }
+        registrations.add(new Registration(cycle, listener));
+    }
+
+    /**
+     * Starts the replay thread
+     *
+     * @throws IOException if the captured output can't be opened
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("the replay has already been started");
+        }
+        final Source source = (log != null) ? new LogSource(Files.newBufferedReader(log, StandardCharsets.UTF_8)) : new SyntheticSource();
+        thread = new Thread(() -> run(source), "sample replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return {@code true} while the replay thread delivers samples - a log replay ends after its last sample
+     */
+    synchronized boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run(final Source source) {
+        // the virtual clock maps the recorded instants to nanos - the first sample is captured at the start
+        // of the replay, the later ones keep their recorded distance, so the derived rates don't depend on the speed
+        final long startNanos = System.nanoTime();
+        Instant first = null;
+        long count = 0;
+        try (source) {
+            for (Event e; !closed && (e = source.next()) != null; count++) {
+                if (first == null) {
+                    first = e.time;
+                }
+                final long due = startNanos + (long) (Duration.between(first, e.time).toNanos() / speed);
+                for (long wait; !closed && (wait = due - System.nanoTime()) > 0; ) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (closed) {
+                    break;
+                }
+
+                final long virtualNanos = startNanos + Duration.between(first, e.time).toNanos();
+                final PollSnapshot snapshot = new PollSnapshot(e.registration.cycle.getDevice(), e.time, virtualNanos);
+                snapshot.addResponse(e.request, e.response, 0, virtualNanos);
+                try {
+                    e.registration.listener.onSnapshot(snapshot);
+                } catch (RuntimeException ex) {
+                    LOG.log(WARNING, "listener of " + e.registration.cycle + " failed", ex);
+                }
+            }
+            LOG.log(INFO, "replay finished after {0} samples", count);
+        } catch (IOException | RuntimeException ex) {
+            LOG.log(WARNING, "replay aborted after " + count + " samples", ex);
+        }
+    }
+
+    private static ProjectedResponse newResponse(final FritzRequest<?> request) {
+        final SoapResponseParser<?> parser = request.getParser();
+        return (parser instanceof SoapProjection) ? new ProjectedResponse((SoapProjection) parser) : null;
+    }
+
+    private interface Source extends Closeable {
+        /**
+         * @return the next sample in chronological order, or {@code null} at the end of the replay
+         */
+        Event next() throws IOException;
+    }
+
+    private static final class Registration {
+        final PollCycle cycle;
+        final SnapshotListener listener;
+        final Map<FritzRequest<?>, Duration> periods;
+
+        Registration(final PollCycle cycle, final SnapshotListener listener) {
+            this.cycle = cycle;
+            this.listener = listener;
+            this.periods = cycle.getPeriods();
+        }
+    }
+
+    private static final class Event {
+        final Instant time;
+        final Registration registration;
+        final FritzRequest<?> request;
+        final ProjectedResponse response;
+
+        Event(final Instant time, final Registration registration, final FritzRequest<?> request, final ProjectedResponse response) {
+            this.time = time;
+            this.registration = registration;
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Parses the lines of the daemon: {@code <ISO capture instant> <device> <action> <field>=<value> ...}
+     */
+    private final class LogSource implements Source {
+        private final BufferedReader reader;
+        private long skipped;
+
+        LogSource(final BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Event next() throws IOException {
+            for (String line; (line = reader.readLine()) != null; ) {
+                final Event e = parse(line);
+                if (e != null) {
+                    return e;
+                }
+                if (!line.isBlank()) {
+                    skipped++;
+                    LOG.log(DEBUG, "skipped sample: {0}", line);
+                }
+            }
+            return null;
+        }
+
+        private Event parse(final String line) {
+            final String[] tokens = line.trim().split(" +");
+            if (tokens.length < 3) {
+                return null;
+            }
+            final Instant time;
+            try {
+                time = Instant.parse(tokens[0]);
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+            for (Registration reg : registrations) {
+                if (!reg.cycle.getDevice().getName().equals(tokens[1])) {
+                    continue;
+                }
+                for (FritzRequest<?> request : reg.periods.keySet()) {
+                    final ProjectedResponse response = request.getAction().equals(tokens[2]) ? newResponse(request) : null;
+                    if (response != null && setValues(response, tokens)) {
+                        return new Event(time, reg, request, response);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean setValues(final ProjectedResponse response, final String[] tokens) {
+            final Map<String, String> values = new HashMap<>();
+            for (int i = 3; i < tokens.length; i++) {
+                final int eq = tokens[i].indexOf('=');
+                if (eq > 0) {
+                    values.put(tokens[i].substring(0, eq), tokens[i].substring(eq + 1));
+                }
+            }
+            final SoapProjection proj = response.getProjection();
+            try {
+                for (int slot = 0; slot < proj.size(); slot++) {
+                    final String value = values.get(proj.getField(slot));
+                    if (value != null) {
+                        response.set(slot, Long.parseLong(value));
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (skipped > 0) {
+                LOG.log(INFO, "skipped {0} samples of unknown devices or actions", skipped);
+            }
+            reader.close();
+        }
+    }
+
+    /**
+     * Generates the samples of the registered requests at their intervals
+     */
+    private final class SyntheticSource implements Source {
+        /** down- and upstream limits in bit/s - DSL 16, VDSL 50, VDSL 100 and cable 250 */
+        private final long[][] links = {
+            { 16_000_000, 1_000_000 }, { 50_000_000, 10_000_000 }, { 100_000_000, 40_000_000 }, { 250_000_000, 40_000_000 }
+        };
+
+        private final Instant start = Instant.now();
+        private final List<Generator> generators = new ArrayList<>();
+
+        SyntheticSource() {
+            final Random random = new Random(seed);
+            for (Registration reg : registrations) {
+                final long[] link = links[random.nextInt(links.length)];
+                final Traffic down = new Traffic(new Random(random.nextLong()), link[0]);
+                final Traffic up = new Traffic(new Random(random.nextLong()), link[1]);
+                reg.periods.forEach((request, period) -> {
+                    if (newResponse(request) != null) {
+                        generators.add(new Generator(reg, request, period.toNanos(), link, down, up));
+                    }
+                });
+            }
+        }
+
+        @Override
+        public Event next() {
+            Generator next = null;
+            for (Generator g : generators) {
+                if (next == null || g.nextNanos < next.nextNanos) {
+                    next = g;
+                }
+            }
+            return (next == null) ? null : next.next(start);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The samples of one request
+     */
+    private static final class Generator {
+        final Registration registration;
+        final FritzRequest<?> request;
+        final long period;
+        final long[] link;
+        final Traffic down;
+        final Traffic up;
+        long nextNanos;
+
+        Generator(final Registration registration, final FritzRequest<?> request, final long period,
+                  final long[] link, final Traffic down, final Traffic up) {
+            this.registration = registration;
+            this.request = request;
+            this.period = period;
+            this.link = link;
+            this.down = down;
+            this.up = up;
+        }
+
+        Event next(final Instant start) {
+            final long nanos = nextNanos;
+            nextNanos += period;
+            final ProjectedResponse response = newResponse(request);
+            final SoapProjection proj = response.getProjection();
+            for (int slot = 0; slot < proj.size(); slot++) {
+                final long value;
+                switch (proj.getField(slot)) {
+                    case "totalBytesReceived":
+                        value = down.counterAt(nanos);
+                        break;
+                    case "totalBytesSent":
+                        value = up.counterAt(nanos);
+                        break;
+                    case "byteReceiveRate":
+                        value = (long) down.rateAt(nanos);
+                        break;
+                    case "byteSendRate":
+                        value = (long) up.rateAt(nanos);
+                        break;
+                    case "layer1DownstreamMaxBitRate":
+                        value = link[0];
+                        break;
+                    case "layer1UpstreamMaxBitRate":
+                        value = link[1];
+                        break;
+                    default:
+                        continue;
+                }
+                response.set(slot, value);
+            }
+            return new Event(start.plusNanos(nanos), registration, request, response);
+        }
+    }
+
+    /**
+     * The transfer of one direction, advanced in steps of a second
+     */
+    private static final class Traffic {
+        private static final long STEP = 1_000_000_000L;
+        private static final long WRAP = 1L << 32;
+
+        private final Random random;
+        private final double limit;
+        private long nanos;
+        private double rate;
+        private double counter;
+        private double load;
+        private int burst;
+
+        Traffic(final Random random, final long limitBits) {
+            this.random = random;
+            this.limit = limitBits / 8.0;
+            this.counter = Math.floorMod(random.nextLong(), WRAP);
+            this.load = 0.1;
+        }
+
+        double rateAt(final long at) {
+            advance(at);
+            return rate;
+        }
+
+        long counterAt(final long at) {
+            advance(at);
+            // interpolated within the step, so fast polls see a steady counter
+            final double partial = rate * (STEP - (nanos - at)) / 1e9;
+            return (long) (counter - rate + partial) % WRAP;
+        }
+
+        private void advance(final long at) {
+            while (nanos <= at) {
+                if (burst > 0) {
+                    burst--;
+                } else if (random.nextInt(120) == 0) {
+                    burst = 5 + random.nextInt(55);
+                }
+                // a mean-reverting walk of the base load, bursts fill the link
+                load += (0.15 - load) * 0.05 + random.nextGaussian() * 0.02;
+                load = Math.max(0.01, Math.min(0.5, load));
+                final double utilization = (burst > 0) ? 0.6 + random.nextDouble() * 0.35 : load;
+                rate = Math.floor(utilization * limit);
+                counter += rate;
+                nanos += STEP;
+            }
+        }
+    }
+}
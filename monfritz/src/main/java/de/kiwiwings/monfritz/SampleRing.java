@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+/**
+ * Fixed-capacity ring of samples, stored in parallel primitive columns.
+ * <p>
+ * Appending allocates nothing - when the ring is full, the oldest sample is overwritten.
+ * The samples are accessed by their position from the oldest ({@code 0}) to the latest
+ * ({@code size()-1}), the times are expected to be ascending.
+ * <p>
+ * Not thread-safe - the ring is written and read by the same thread, e.g. the JavaFX thread.
+ */
+public class SampleRing {
+    private final long[] times;
+    private final double[] values;
+    /** position of the oldest sample */
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity the maximum number of samples
+     */
+    public SampleRing(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * @param time the capture time, usually the {@link System#nanoTime()}
+     * @param value the sample value
+     */
+    public void add(final long time, final double value) {
+        final int idx;
+        if (size < times.length) {
+            idx = index(size++);
+        } else {
+            idx = head;
+            head = index(1);
+        }
+        times[idx] = time;
+        values[idx] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param i the position, {@code 0} is the oldest sample
+     * @return the time of the sample
+     */
+    public long getTime(final int i) {
+        return times[index(checkPosition(i))];
+    }
+
+    /**
+     * @param i the position, {@code 0} is the oldest sample
+     * @return the value of the sample
+     */
+    public double getValue(final int i) {
+        return values[index(checkPosition(i))];
+    }
+
+    /**
+     * @return the time of the latest sample
+     */
+    public long getLatestTime() {
+        return getTime(size - 1);
+    }
+
+    /**
+     * @param time the time to search
+     * @return the position of the first sample at or after the time, {@code size()} if there's none
+     */
+    public int indexOf(final long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (times[index(mid)] - time < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public void clear() {
+        head = size = 0;
+    }
+
+    private int checkPosition(final int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("position " + i + " of " + size);
+        }
+        return i;
+    }
+
+    private int index(final int i) {
+        final int idx = head + i;
+        return (idx < times.length) ? idx : idx - times.length;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stored series with its rollups - min, max, average, count and counter increase per minute and
+ * per hour - which are maintained incrementally while the samples are appended.
+ * <p>
+ * Each aggregate is a series next to the raw one, e.g. {@code fritz.box/totalBytesReceived/1h/max},
+ * which is stored and compressed like any other series. A bucket is written when the first sample
+ * of the next bucket arrives, the open buckets are kept in memory. When the rollup is opened, the
+ * open buckets are rebuilt from the raw samples after the last written bucket - this also creates
+ * the rollups of a history, which was recorded without them.
+ * <p>
+ * Long-range queries use the coarsest resolution, which still gives enough points: 30 days at
+ * 720 points are read from the 720 hourly buckets instead of 2.6 million raw samples.
+ */
+public class SeriesRollup {
+    public enum Resolution {
+        RAW(null, 1),
+        MINUTE("1m", TimeUnit.MINUTES.toMillis(1)),
+        HOUR("1h", TimeUnit.HOURS.toMillis(1));
+
+        private final String suffix;
+        private final long width;
+
+        Resolution(final String suffix, final long width) {
+            this.suffix = suffix;
+            this.width = width;
+        }
+
+        /**
+         * @return the width of a bucket in milliseconds
+         */
+        public long getWidth() {
+            return width;
+        }
+
+        /**
+         * @param from the start of the range in epoch milliseconds
+         * @param to the end of the range in epoch milliseconds
+         * @param points the number of points needed, e.g. the width of the chart in pixels
+         * @return the coarsest resolution, which has at least the number of points in the range
+         */
+        public static Resolution select(final long from, final long to, final int points) {
+            for (Resolution res : new Resolution[]{ HOUR, MINUTE }) {
+                if ((to - from) / res.width >= points) {
+                    return res;
+                }
+            }
+            return RAW;
+        }
+    }
+
+    public enum Aggregate {
+        MIN, MAX, AVG, COUNT,
+        /**
+         * the increase of the value as counter since the sample before the bucket - see {@link CounterRate#increase}.
+         * Unlike the difference of minimum and maximum, the sum of the increases survives wraps and resets.
+         */
+        INCREASE;
+
+        private final String element = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 64 KiB per uncompressed segment of an aggregate - 2.8 days of minute buckets. With the default capacity
+     * the 10 aggregate series of a rollup would map 160 MiB for a handful of buckets.
+     */
+    static final int TIER_SEGMENT_CAPACITY = 1 << 12;
+
+    private final StoredSeries raw;
+    private final Map<Resolution, Tier> tiers = new EnumMap<>(Resolution.class);
+
+    SeriesRollup(final TimeSeriesStore store, final StoredSeries raw) throws IOException {
+        this.raw = raw;
+        for (Resolution res : Resolution.values()) {
+            if (res != Resolution.RAW) {
+                tiers.put(res, new Tier(store, raw.getName() + "/" + res.suffix + "/", res.width));
+            }
+        }
+        // rebuild the open buckets - the written buckets are skipped by their ascending times
+        for (Tier tier : tiers.values()) {
+            long written = Long.MAX_VALUE;
+            for (StoredSeries ss : tier.series.values()) {
+                written = Math.min(written, ss.getLatestTime());
+            }
+            // the samples of the last written bucket only provide the predecessor of the increase
+            final long open = (written < 0) ? 0 : written + tier.width;
+            final SampleConsumer rebuild = (time, value) -> {
+                try {
+                    if (time < open) {
+                        tier.last = value;
+                    } else {
+                        tier.add(time, value);
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            };
+            try {
+                raw.scan(Math.max(0, written), Long.MAX_VALUE, rebuild);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * @param name the name of a series
+     * @return {@code true}, if the series is an aggregate of a rollup
+     */
+    static boolean isRollupName(final String name) {
+        final String[] elements = name.split("/");
+        if (elements.length < 3) {
+            return false;
+        }
+        final String suffix = elements[elements.length - 2];
+        final String aggregate = elements[elements.length - 1];
+        return Arrays.stream(Resolution.values()).anyMatch(res -> suffix.equals(res.suffix))
+            && Arrays.stream(Aggregate.values()).anyMatch(agg -> aggregate.equals(agg.element));
+    }
+
+    public StoredSeries getSeries() {
+        return raw;
+    }
+
+    /**
+     * @param resolution the resolution of the rollup
+     * @return the end of the written buckets in epoch milliseconds - later samples are only in the raw series
+     */
+    public long getRollupEnd(final Resolution resolution) {
+        if (resolution == Resolution.RAW) {
+            return Long.MAX_VALUE;
+        }
+        final Tier tier = tiers.get(resolution);
+        final long latest = tier.series.get(Aggregate.COUNT).getLatestTime();
+        return (latest < 0) ? Long.MIN_VALUE : latest + tier.width;
+    }
+
+    /**
+     * Appends a sample to the raw series and adds it to the rollups
+     *
+     * @param time the time in epoch milliseconds
+     * @param value the value
+     * @return {@code true}, if the sample was appended
+     * @throws IOException if a segment can't be created
+     */
+    public synchronized boolean append(final long time, final double value) throws IOException {
+        if (!raw.append(time, value)) {
+            return false;
+        }
+        for (Tier tier : tiers.values()) {
+            tier.add(time, value);
+        }
+        return true;
+    }
+
+    /**
+     * Passes an aggregate of the time range in chronological order to the consumer. The times of
+     * the buckets are their starts. The aggregates of the raw resolution are the raw samples,
+     * {@code 1} for the count and the increase since the previous sample of the range.
+     *
+     * @param resolution the resolution
+     * @param aggregate the aggregate
+     * @param from the start of the range in epoch milliseconds, inclusive
+     * @param to the end of the range in epoch milliseconds, exclusive
+     * @param consumer the receiver of the aggregates
+     */
+    public void scan(final Resolution resolution, final Aggregate aggregate, final long from, final long to, final SampleConsumer consumer) {
+        if (resolution == Resolution.RAW) {
+            switch (aggregate) {
+                case COUNT:
+                    raw.scan(from, to, (time, value) -> consumer.accept(time, 1));
+                    break;
+                case INCREASE: {
+                    final double[] last = { Double.NaN };
+                    raw.scan(from, to, (time, value) -> {
+                        consumer.accept(time, Double.isNaN(last[0]) ? 0 : CounterRate.increase(last[0], value));
+                        last[0] = value;
+                    });
+                    break;
+                }
+                default:
+                    raw.scan(from, to, consumer);
+                    break;
+            }
+        } else {
+            final Tier tier = tiers.get(resolution);
+            // include the bucket, which contains the start
+            tier.series.get(aggregate).scan(Math.floorDiv(from, tier.width) * tier.width, to, consumer);
+        }
+    }
+
+    /**
+     * Passes an aggregate of the time range at the coarsest resolution, which gives the number of points
+     *
+     * @param aggregate the aggregate
+     * @param from the start of the range in epoch milliseconds, inclusive
+     * @param to the end of the range in epoch milliseconds, exclusive
+     * @param points the number of points needed, e.g. the width of the chart in pixels
+     * @param consumer the receiver of the aggregates
+     * @return the selected resolution
+     */
+    public Resolution scan(final Aggregate aggregate, final long from, final long to, final int points, final SampleConsumer consumer) {
+        final Resolution resolution = Resolution.select(from, to, points);
+        scan(resolution, aggregate, from, to, consumer);
+        return resolution;
+    }
+
+    @Override
+    public String toString() {
+        return raw.getName();
+    }
+
+    /**
+     * The aggregate series of one resolution and its open bucket
+     */
+    private static final class Tier {
+        final Map<Aggregate, StoredSeries> series = new EnumMap<>(Aggregate.class);
+        final long width;
+
+        long start = Long.MIN_VALUE;
+        double min;
+        double max;
+        double sum;
+        long count;
+        double increase;
+        /** the previous sample, for the increase */
+        double last = Double.NaN;
+
+        Tier(final TimeSeriesStore store, final String prefix, final long width) throws IOException {
+            this.width = width;
+            for (Aggregate agg : Aggregate.values()) {
+                series.put(agg, store.series(prefix + agg.element, TIER_SEGMENT_CAPACITY));
+            }
+        }
+
+        void add(final long time, final double value) throws IOException {
+            final long bucket = Math.floorDiv(time, width) * width;
+            final double inc = Double.isNaN(last) ? 0 : CounterRate.increase(last, value);
+            last = value;
+            if (bucket != start) {
+                flush();
+                start = bucket;
+                min = max = value;
+                sum = value;
+                count = 1;
+                increase = inc;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+                increase += inc;
+            }
+        }
+
+        private void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            series.get(Aggregate.MIN).append(start, min);
+            series.get(Aggregate.MAX).append(start, max);
+            series.get(Aggregate.AVG).append(start, sum / count);
+            series.get(Aggregate.INCREASE).append(start, increase);
+            // the count is written last, it marks the bucket as complete
+            series.get(Aggregate.COUNT).append(start, count);
+        }
+    }
+}
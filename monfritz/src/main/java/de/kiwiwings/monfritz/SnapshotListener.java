@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+/**
+ * Receives the snapshots of a {@link PollCycle} scheduled with the {@link PollEngine}.
+ * The snapshots are reported on the polling thread, the overruns on the scheduler thread.
+ */
+@FunctionalInterface
+public interface SnapshotListener {
+    /**
+     * @param snapshot the results of one tick - the failed actions are reported additionally via {@link #onFailure}
+     *                 and the gaps via {@link #onGap}
+     */
+    void onSnapshot(PollSnapshot snapshot);
+
+    /**
+     * Called for each action, which was cancelled at the deadline of its tick.
+     * The default only logs on debug level, like {@link #onFailure}.
+     *
+     * @param snapshot the snapshot
+     * @param request the action
+     */
+    default void onGap(PollSnapshot snapshot, FritzRequest<?> request) {
+        PollEngine.LOG.log(System.Logger.Level.DEBUG, "{0} {1} missed the deadline of its cycle",
+            snapshot.getDevice(), request.getAction());
+    }
+
+    /**
+     * Called for each failed action. The default only logs on debug level - the {@link BackoffPolicy}
+     * already logs when the device starts failing and when it recovers.
+     *
+     * @param snapshot the snapshot
+     * @param request the action
+     * @param ex the cause
+     */
+    default void onFailure(PollSnapshot snapshot, FritzRequest<?> request, Exception ex) {
+        PollEngine.LOG.log(System.Logger.Level.DEBUG, "{0} {1} failed: {2}", snapshot.getDevice(), request.getAction(), ex);
+    }
+
+    /**
+     * Called when the previous tick was still running at the next deadline.
+     * The deadline is skipped. Implementations need to return quickly.
+     *
+     * @param cycle the cycle
+     * @param overruns the number of overruns so far
+     */
+    default void onOverrun(PollCycle cycle, long overruns) {
+        PollEngine.LOG.log(System.Logger.Level.WARNING, "{0} took longer than its tick - {1} overrun(s)", cycle, overruns);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup of the response parsers.
+ * <p>
+ * The build-time generated parser is used if there's one, otherwise the response is unmarshalled
+ * via {@link JaxbRegistry}, which isn't initialized until the first class needs it.
+ */
+final class SoapParsers {
+    private static final XMLInputFactory XIF = createInputFactory();
+
+    private static final Map<Class<?>, SoapResponseParser<?>> PARSERS = new ConcurrentHashMap<>();
+
+    private SoapParsers() {
+    }
+
+    /**
+     * Looks up the parsers upfront, so the first poll doesn't pay for it
+     *
+     * @param responseClasses the response classes
+     */
+    static void preload(final Class<?>... responseClasses) {
+        for (Class<?> rc : responseClasses) {
+            forClass(rc);
+        }
+    }
+
+    static XMLInputFactory getInputFactory() {
+        return XIF;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> SoapResponseParser<T> forClass(final Class<T> responseClass) {
+        return (SoapResponseParser<T>) PARSERS.computeIfAbsent(responseClass, SoapParsers::createParser);
+    }
+
+    private static <T> SoapResponseParser<T> createParser(final Class<T> responseClass) {
+        try {
+            final Class<?> generated = Class.forName(responseClass.getName() + "Parser", true, responseClass.getClassLoader());
+            if (SoapResponseParser.class.isAssignableFrom(generated)) {
+                @SuppressWarnings("unchecked")
+                final SoapResponseParser<T> parser = (SoapResponseParser<T>) generated.getDeclaredConstructor().newInstance();
+                return parser;
+            }
+        } catch (ReflectiveOperationException | LinkageError ignored) {
+            // no generated parser - fall through
+        }
+
+        JaxbRegistry.preload(responseClass);
+        return new JaxbParser<>(responseClass);
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        // the factory is only thread-safe as long as it isn't reconfigured, so set it up once here
+        final XMLInputFactory xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xif;
+    }
+
+    private static class JaxbParser<T> implements SoapResponseParser<T> {
+        private final Class<T> responseClass;
+
+        JaxbParser(final Class<T> responseClass) {
+            this.responseClass = responseClass;
+        }
+
+        @Override
+        public T parse(final XMLStreamReader xsr) throws XMLStreamException {
+            final Unmarshaller unmarshaller = JaxbRegistry.borrowUnmarshaller(responseClass);
+            try {
+                return unmarshaller.unmarshal(xsr, responseClass).getValue();
+            } catch (JAXBException e) {
+                throw new XMLStreamException("Can't unmarshal " + responseClass.getSimpleName(), e);
+            } finally {
+                JaxbRegistry.release(responseClass, unmarshaller);
+            }
+        }
+    }
+}
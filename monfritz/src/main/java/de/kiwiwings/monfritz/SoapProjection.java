@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import jakarta.xml.bind.annotation.XmlElement;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Parser which only decodes the fields a consumer is interested in.
+ * <p>
+ * The projection is declared by the Java field names of a response class - their {@code @XmlElement}
+ * mapping is resolved once on construction. While parsing, all other elements are skipped without
+ * converting their text, and the selected values are stored in the primitive slots of a
+ * {@link ProjectedResponse} instead of boxed wrappers. Only integral and boolean fields can be projected.
+ */
+public class SoapProjection implements SoapResponseParser<ProjectedResponse> {
+    private final Class<?> responseClass;
+    private final String[] fields;
+    private final String[] elements;
+    private final boolean[] booleans;
+
+    private SoapProjection(final Class<?> responseClass, final String... fields) {
+        if (fields.length > Long.SIZE) {
+            throw new IllegalArgumentException("A projection is limited to " + Long.SIZE + " fields");
+        }
+        this.responseClass = responseClass;
+        this.fields = fields.clone();
+        elements = new String[fields.length];
+        booleans = new boolean[fields.length];
+
+        for (int i = 0; i < fields.length; i++) {
+            final Field f;
+            try {
+                f = responseClass.getDeclaredField(fields[i]);
+            } catch (NoSuchFieldException e) {
+                throw new IllegalArgumentException(responseClass.getSimpleName() + " has no field " + fields[i], e);
+            }
+            final XmlElement xe = f.getAnnotation(XmlElement.class);
+            elements[i] = (xe == null || "##default".equals(xe.name())) ? f.getName() : xe.name();
+
+            final Class<?> type = f.getType();
+            if (type == Boolean.class || type == boolean.class) {
+                booleans[i] = true;
+            } else if (!(type == Long.class || type == long.class || type == Integer.class || type == int.class
+                || type == Short.class || type == short.class)) {
+                throw new IllegalArgumentException("Field " + fields[i] + " of type " + type.getSimpleName() + " can't be projected");
+            }
+        }
+    }
+
+    /**
+     * @param responseClass the JAXB mapped response class
+     * @param fields the Java field names, their index is the slot of the value in the {@link ProjectedResponse}
+     * @return the projection
+     */
+    public static SoapProjection of(final Class<?> responseClass, final String... fields) {
+        return new SoapProjection(responseClass, fields);
+    }
+
+    public Class<?> getResponseClass() {
+        return responseClass;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    /**
+     * @param slot the slot index
+     * @return the Java field name of the slot
+     */
+    public String getField(final int slot) {
+        return fields[slot];
+    }
+
+    /**
+     * @param field the Java field name
+     * @return the slot index of the field
+     */
+    public int slot(final String field) {
+        final int idx = Arrays.asList(fields).indexOf(field);
+        if (idx == -1) {
+            throw new IllegalArgumentException("Field " + field + " isn't part of the projection");
+        }
+        return idx;
+    }
+
+    @Override
+    public ProjectedResponse parse(final XMLStreamReader xsr) throws XMLStreamException {
+        final ProjectedResponse response = new ProjectedResponse(this);
+        while (xsr.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final int slot = indexOf(xsr.getLocalName());
+            if (slot == -1) {
+                SoapValues.skipElement(xsr);
+            } else {
+                readValue(xsr, response, slot);
+            }
+        }
+        return response;
+    }
+
+    private int indexOf(final String element) {
+        // the number of projected fields is small, so a linear scan beats hashing
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i].equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the element text directly from the character buffer of the reader.
+     * The text might be split into several events, so the digits are accumulated until the end tag.
+     */
+    private void readValue(final XMLStreamReader xsr, final ProjectedResponse response, final int slot) throws XMLStreamException {
+        final boolean isBoolean = booleans[slot];
+        long value = 0;
+        boolean negative = false, valid = true, empty = true;
+
+        for (int event = xsr.next(); event != XMLStreamConstants.END_ELEMENT; event = xsr.next()) {
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    // not a simple value
+                    SoapValues.skipElement(xsr);
+                    valid = false;
+                    continue;
+                default:
+                    continue;
+            }
+
+            final char[] chars = xsr.getTextCharacters();
+            final int end = xsr.getTextStart() + xsr.getTextLength();
+            for (int i = xsr.getTextStart(); valid && i < end; i++) {
+                final char c = chars[i];
+                if (Character.isWhitespace(c)) {
+                    // leading/trailing whitespace of a value - inner whitespace isn't worth checking
+                    continue;
+                }
+                if (isBoolean) {
+                    if (empty) {
+                        valid = (c == '1' || c == 't' || c == '0' || c == 'f');
+                        value = (c == '1' || c == 't') ? 1 : 0;
+                    }
+                } else if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                } else if (c == '-' && empty) {
+                    negative = true;
+                } else {
+                    valid = false;
+                }
+                empty = false;
+            }
+        }
+
+        if (valid && !empty) {
+            response.set(slot, negative ? -value : value);
+        }
+    }
+}
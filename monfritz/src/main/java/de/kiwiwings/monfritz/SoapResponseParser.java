@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a SOAP response element into its bean.
+ * <p>
+ * Implementations are generated at build time for each {@code @XmlRootElement} response class
+ * - see {@link SoapParsers} for the lookup and the JAXB fallback.
+ *
+ * @param <T> the response class
+ */
+public interface SoapResponseParser<T> {
+    /**
+     * @param xsr the reader positioned on the start tag of the response element.
+     *            When this method returns, it's positioned on the matching end tag.
+     * @return the parsed response
+     * @throws XMLStreamException if the response isn't well-formed
+     */
+    T parse(XMLStreamReader xsr) throws XMLStreamException;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Lexical conversions used by the generated parsers.
+ * <p>
+ * Like the JAXB runtime, values which can't be converted are ignored, i.e. a boxed field
+ * stays {@code null} and a primitive one stays at its default.
+ */
+public final class SoapValues {
+    private SoapValues() {
+    }
+
+    public static String parseString(final String text) {
+        return text;
+    }
+
+    public static Integer parseInteger(final String text) {
+        try {
+            return Integer.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static int parseInt(final String text) {
+        final Integer i = parseInteger(text);
+        return i == null ? 0 : i;
+    }
+
+    public static Long parseLong(final String text) {
+        try {
+            return Long.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static long parseLongValue(final String text) {
+        final Long l = parseLong(text);
+        return l == null ? 0 : l;
+    }
+
+    public static Double parseDouble(final String text) {
+        try {
+            return Double.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static double parseDoubleValue(final String text) {
+        final Double d = parseDouble(text);
+        return d == null ? 0 : d;
+    }
+
+    /**
+     * @return the xsd:boolean value - the boxes use "1" and "0"
+     */
+    public static Boolean parseBoolean(final String text) {
+        switch (text.trim()) {
+            case "1":
+            case "true":
+                return Boolean.TRUE;
+            case "0":
+            case "false":
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    public static boolean parseBooleanValue(final String text) {
+        return Boolean.TRUE.equals(parseBoolean(text));
+    }
+
+    /**
+     * Skips an unmapped element including its children.
+     *
+     * @param xsr the reader positioned on the start tag, afterwards it's positioned on the matching end tag
+     */
+    public static void skipElement(final XMLStreamReader xsr) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (xsr.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
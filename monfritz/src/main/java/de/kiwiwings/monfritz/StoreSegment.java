@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped segment file of a {@link StoredSeries} with fixed-width records.
+ * <p>
+ * Layout: a header of {@value #HEADER_SIZE} bytes - magic, version, record size, capacity and the
+ * committed record count - followed by the preallocated records of a {@code long} time and a
+ * {@code double} value. A sample is written into the mapping without any syscall, first the value
+ * and then the time, so a record with a time is complete.
+ * <p>
+ * The committed count in the header is only updated on {@link #force()}. Opening a segment therefore
+ * recovers the tail: starting at the committed count, the records are taken over as long as their times
+ * are ascending - zeroed, torn or stale records end the segment. A file, which was cut off, keeps its
+ * complete records - a writable one is extended to its capacity again.
+ */
+final class StoreSegment {
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 16;
+    static final String SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x4D465453; // "MFTS"
+    private static final int VERSION = 1;
+    private static final int OFS_MAGIC = 0;
+    private static final int OFS_VERSION = 4;
+    private static final int OFS_RECORD_SIZE = 8;
+    private static final int OFS_CAPACITY = 12;
+    private static final int OFS_COMMITTED = 16;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int count;
+
+    private StoreSegment(final Path path, final MappedByteBuffer buffer, final int capacity, final int count) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * @param path the new segment file
+     * @param capacity the number of records
+     * @return the empty, writable segment
+     */
+    static StoreSegment create(final Path path, final int capacity) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping extends the - sparse - file, it stays valid after the channel is closed
+            buffer = fc.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+        buffer.putInt(OFS_MAGIC, MAGIC);
+        buffer.putInt(OFS_VERSION, VERSION);
+        buffer.putInt(OFS_RECORD_SIZE, RECORD_SIZE);
+        buffer.putInt(OFS_CAPACITY, capacity);
+        buffer.putLong(OFS_COMMITTED, 0);
+        return new StoreSegment(path, buffer, capacity, 0);
+    }
+
+    /**
+     * @param path the existing segment file
+     * @param writable {@code true} to map the segment for appending
+     * @return the segment with its recovered records
+     */
+    static StoreSegment open(final Path path, final boolean writable) throws IOException {
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int available;
+        try (FileChannel fc = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = fc.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException(path + " is no segment - too short");
+            }
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && fc.read(header, header.position()) >= 0) {
+                // read the complete header
+            }
+            if (header.getInt(OFS_MAGIC) != MAGIC || header.getInt(OFS_VERSION) != VERSION || header.getInt(OFS_RECORD_SIZE) != RECORD_SIZE) {
+                throw new IOException(path + " is no segment of this version");
+            }
+            capacity = header.getInt(OFS_CAPACITY);
+            if (capacity <= 0) {
+                throw new IOException(path + " has an invalid capacity");
+            }
+            final long length = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            // only the complete records of a cut off file
+            available = (int) Math.min(capacity, (fileSize - HEADER_SIZE) / RECORD_SIZE);
+            buffer = writable
+                ? fc.map(FileChannel.MapMode.READ_WRITE, 0, length)
+                : fc.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + (long) available * RECORD_SIZE);
+        }
+        final StoreSegment seg = new StoreSegment(path, buffer, capacity, 0);
+        seg.count = seg.recover((int) Math.max(0, Math.min(available, buffer.getLong(OFS_COMMITTED))), available);
+        return seg;
+    }
+
+    private int recover(final int committed, final int available) {
+        int n = committed;
+        long last = (n == 0) ? Long.MIN_VALUE : getTime(n - 1);
+        while (n < available) {
+            final long time = getTime(n);
+            if (time == 0 || time <= last) {
+                break;
+            }
+            last = time;
+            n++;
+        }
+        return n;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isWritable() {
+        return !buffer.isReadOnly();
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    long getTime(final int i) {
+        return buffer.getLong(HEADER_SIZE + i * RECORD_SIZE);
+    }
+
+    double getValue(final int i) {
+        return buffer.getDouble(HEADER_SIZE + i * RECORD_SIZE + 8);
+    }
+
+    long getFirstTime() {
+        return getTime(0);
+    }
+
+    long getLastTime() {
+        return getTime(count - 1);
+    }
+
+    /**
+     * Appends the sample - the caller ensures the ascending order and the capacity
+     */
+    void append(final long time, final double value) {
+        final int ofs = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putDouble(ofs + 8, value);
+        // the time marks the record as complete
+        buffer.putLong(ofs, time);
+        count++;
+    }
+
+    /**
+     * @param time the time to search
+     * @return the index of the first record at or after the time, {@link #size()} if there's none
+     */
+    int indexOf(final long time) {
+        return indexOf(time, count);
+    }
+
+    /**
+     * @param time the time to search
+     * @param size the number of records to search, e.g. a snapshot of {@link #size()}
+     * @return the index of the first record at or after the time, {@code size} if there's none
+     */
+    int indexOf(final long time, final int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getTime(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the records to the disk and commits them in the header
+     */
+    void force() {
+        if (!isWritable()) {
+            return;
+        }
+        buffer.force();
+        buffer.putLong(OFS_COMMITTED, count);
+        buffer.force();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * One time series of a {@link TimeSeriesStore} - a directory of segment files, which are named
+ * after the time of their first sample.
+ * <p>
+ * Only the latest segment is a memory-mapped {@link StoreSegment} with fixed-width records. When it's
+ * full, a new segment is started and the full one is compressed into a {@link CompressedSegment} -
+ * about 1-2 instead of 16 bytes per sample - on the compressor thread of the store, so the writer
+ * isn't blocked. Until then it's scanned uncompressed. The segments are mapped outside the heap and
+ * are paged in and out by the operating system.
+ * <p>
+ * A series has a single writer - e.g. the polling thread of its device. Scans may run concurrently
+ * on other threads.
+ */
+public class StoredSeries {
+    private static final System.Logger LOG = System.getLogger(StoredSeries.class.getName());
+
+    private final String name;
+    private final Path dir;
+    private final int segmentCapacity;
+    private final Executor compressor;
+    /** the compressed segments ordered by time */
+    private final List<CompressedSegment> archive = new ArrayList<>();
+    /** the full segments after the compressed ones, which are queued for compression */
+    private final List<StoreSegment> pending = new ArrayList<>();
+    /** the writable segment after the compressed ones, {@code null} until the next sample */
+    private StoreSegment head;
+
+    StoredSeries(final String name, final Path dir, final int segmentCapacity, final Executor compressor) throws IOException {
+        this.name = name;
+        this.dir = dir;
+        this.segmentCapacity = segmentCapacity;
+        this.compressor = compressor;
+        Files.createDirectories(dir);
+
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*{" + StoreSegment.SUFFIX + "," + CompressedSegment.SUFFIX + "}")) {
+            ds.forEach(files::add);
+        }
+        // the zero-padded names sort by time
+        files.sort(null);
+        for (int i = 0; i < files.size(); i++) {
+            final Path file = files.get(i);
+            if (file.toString().endsWith(CompressedSegment.SUFFIX)) {
+                archive.add(CompressedSegment.open(file));
+                continue;
+            }
+            final Path compressed = getCompressedPath(file);
+            if (Files.exists(compressed)) {
+                // the segment was compressed, but not yet deleted - the compressed file sorts before it
+                Files.delete(file);
+                continue;
+            }
+            final StoreSegment seg = StoreSegment.open(file, i == files.size() - 1);
+            if (seg.size() == 0) {
+                // a segment, which was created but never written
+                Files.deleteIfExists(file);
+            } else if (i < files.size() - 1) {
+                // a full segment, which wasn't compressed yet
+                pending.add(seg);
+            } else {
+                head = seg;
+            }
+        }
+        for (StoreSegment seg : new ArrayList<>(pending)) {
+            submit(seg);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Appends a sample. Samples, which aren't newer than the latest sample, are ignored.
+     *
+     * @param time the time in epoch milliseconds
+     * @param value the value
+     * @return {@code true}, if the sample was appended
+     * @throws IOException if a new segment can't be created
+     */
+    public synchronized boolean append(final long time, final double value) throws IOException {
+        if (time <= 0) {
+            throw new IllegalArgumentException("time must be positive");
+        }
+        if (time <= getLatestTime()) {
+            return false;
+        }
+        if (head != null && head.isFull()) {
+            archive(head);
+            head = null;
+        }
+        if (head == null) {
+            head = StoreSegment.create(dir.resolve(String.format("%020d", time) + StoreSegment.SUFFIX), segmentCapacity);
+        }
+        head.append(time, value);
+        return true;
+    }
+
+    /**
+     * Queues a full segment for the compression - once per segment capacity, e.g. all 12 days
+     */
+    private void archive(final StoreSegment seg) {
+        pending.add(seg);
+        submit(seg);
+    }
+
+    private void submit(final StoreSegment seg) {
+        try {
+            compressor.execute(() -> compress(seg));
+        } catch (RejectedExecutionException e) {
+            // the store is closed - the segment is compressed when the series is opened again
+        }
+    }
+
+    /**
+     * Replaces a full segment by its compressed copy - called on the compressor thread, which
+     * compresses the segments in the order of their time
+     */
+    private void compress(final StoreSegment seg) {
+        synchronized (this) {
+            if (pending.isEmpty() || pending.get(0) != seg) {
+                // a preceding segment failed - keep the order, the segments are compressed on the next open
+                return;
+            }
+        }
+        final CompressedSegment cs;
+        try {
+            cs = CompressedSegment.write(getCompressedPath(seg.getPath()), seg);
+        } catch (IOException | RuntimeException e) {
+            // the segment stays uncompressed until the series is opened again
+            LOG.log(WARNING, "can't compress " + seg, e);
+            return;
+        }
+        synchronized (this) {
+            pending.remove(0);
+            archive.add(cs);
+        }
+        try {
+            // running scans keep the mapping of the deleted file
+            Files.delete(seg.getPath());
+        } catch (IOException e) {
+            // the compressed file takes precedence on the next open
+            LOG.log(WARNING, "can't delete the compressed segment " + seg, e);
+        }
+    }
+
+    private static Path getCompressedPath(final Path segment) {
+        final String fileName = segment.getFileName().toString();
+        return segment.resolveSibling(fileName.substring(0, fileName.length() - StoreSegment.SUFFIX.length()) + CompressedSegment.SUFFIX);
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public synchronized long size() {
+        long size = (head == null) ? 0 : head.size();
+        for (CompressedSegment seg : archive) {
+            size += seg.size();
+        }
+        for (StoreSegment seg : pending) {
+            size += seg.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the time of the first sample, or {@code -1} if the series is empty
+     */
+    public synchronized long getFirstTime() {
+        return !archive.isEmpty() ? archive.get(0).getFirstTime()
+            : !pending.isEmpty() ? pending.get(0).getFirstTime()
+            : (head != null) ? head.getFirstTime() : -1;
+    }
+
+    /**
+     * @return the time of the latest sample, or {@code -1} if the series is empty
+     */
+    public synchronized long getLatestTime() {
+        return (head != null) ? head.getLastTime()
+            : !pending.isEmpty() ? pending.get(pending.size() - 1).getLastTime()
+            : !archive.isEmpty() ? archive.get(archive.size() - 1).getLastTime() : -1;
+    }
+
+    /**
+     * Passes the samples of the time range in chronological order to the consumer
+     *
+     * @param from the start of the range in epoch milliseconds, inclusive
+     * @param to the end of the range in epoch milliseconds, exclusive
+     * @param consumer the receiver of the samples
+     */
+    public void scan(final long from, final long to, final SampleConsumer consumer) {
+        // scan a snapshot outside the lock - the compressed and the pending segments are immutable and
+        // the head is only appended, so concurrent scans neither block each other nor the writer
+        final CompressedSegment[] segs;
+        final StoreSegment[] full;
+        final StoreSegment seg;
+        final int headSize;
+        synchronized (this) {
+            segs = archive.toArray(new CompressedSegment[0]);
+            full = pending.toArray(new StoreSegment[0]);
+            seg = head;
+            headSize = (head == null) ? 0 : head.size();
+        }
+        for (CompressedSegment cs : segs) {
+            if (cs.getLastTime() < from) {
+                continue;
+            }
+            if (!cs.scan(from, to, consumer)) {
+                return;
+            }
+        }
+        for (StoreSegment ss : full) {
+            if (ss.getLastTime() < from) {
+                continue;
+            }
+            if (!scan(ss, ss.size(), from, to, consumer)) {
+                return;
+            }
+        }
+        if (seg != null) {
+            scan(seg, headSize, from, to, consumer);
+        }
+    }
+
+    private static boolean scan(final StoreSegment seg, final int size, final long from, final long to, final SampleConsumer consumer) {
+        for (int i = seg.indexOf(from, size); i < size; i++) {
+            final long time = seg.getTime(i);
+            if (time >= to) {
+                return false;
+            }
+            consumer.accept(time, seg.getValue(i));
+        }
+        return true;
+    }
+
+    /**
+     * Commits the appended samples to the disk
+     */
+    public synchronized void force() {
+        if (head != null) {
+            head.force();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
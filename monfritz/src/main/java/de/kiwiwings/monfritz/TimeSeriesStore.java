@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.kiwiwings.monfritz;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Append-only on-disk store of time series, e.g. weeks of per-second samples of the routers.
+ * <p>
+ * Each series is a directory of memory-mapped segment files with fixed-width records, see
+ * {@link StoredSeries} and {@link StoreSegment}. Appending a sample is a store into the mapping -
+ * no copy and no syscall. The operating system writes the pages back, {@link #force()} commits the
+ * samples explicitly. After a crash the samples, which made it to the mapping, are recovered.
+ * Full segments are compressed on a background thread, see {@link CompressedSegment} - an interrupted
+ * compression leaves a temporary file, which is removed when the store is opened again. The per-minute
+ * and per-hour rollups of a series are maintained by {@link SeriesRollup}.
+ * <p>
+ * The series names consist of path elements separated by {@code /}, e.g. {@code fritz.box/totalBytesSent}.
+ */
+public class TimeSeriesStore implements Closeable {
+    /** 16 MiB per uncompressed segment - 12 days of per-second samples */
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+
+    private static final System.Logger LOG = System.getLogger(TimeSeriesStore.class.getName());
+    private static final Pattern NAME_ELEMENT = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9._-]*");
+
+    private final Path dir;
+    private final int segmentCapacity;
+    private final Map<String, StoredSeries> series = new HashMap<>();
+    private final Map<String, SeriesRollup> rollups = new HashMap<>();
+    /** compresses the full segments of all series, one at a time and in their order */
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "fritz-store-compressor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private TimeSeriesStore(final Path dir, final int segmentCapacity) {
+        this.dir = dir;
+        this.segmentCapacity = segmentCapacity;
+    }
+
+    /**
+     * @param dir the directory of the store, which is created if necessary
+     * @return the store
+     * @throws IOException if the directory can't be created
+     */
+    public static TimeSeriesStore open(final Path dir) throws IOException {
+        return open(dir, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * @param dir the directory of the store, which is created if necessary
+     * @param segmentCapacity the number of samples per segment file
+     * @return the store
+     * @throws IOException if the directory can't be created
+     */
+    public static TimeSeriesStore open(final Path dir, final int segmentCapacity) throws IOException {
+        if (segmentCapacity <= 0) {
+            throw new IllegalArgumentException("segment capacity must be positive");
+        }
+        Files.createDirectories(dir);
+        deleteTemporaryFiles(dir);
+        return new TimeSeriesStore(dir, segmentCapacity);
+    }
+
+    /**
+     * Removes the leftovers of compressions, which were interrupted by a crash - the uncompressed
+     * segments are still in place and are compressed again
+     */
+    private static void deleteTemporaryFiles(final Path dir) throws IOException {
+        final List<Path> tmps = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(CompressedSegment.TMP_SUFFIX)).forEach(tmps::add);
+        }
+        for (Path tmp : tmps) {
+            LOG.log(INFO, "removing the interrupted compression {0}", tmp);
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @param name the name of the series
+     * @return the series, which is created if necessary
+     * @throws IOException if the segments of the series can't be opened
+     */
+    public StoredSeries series(final String name) throws IOException {
+        return series(name, segmentCapacity);
+    }
+
+    /**
+     * @param name the name of the series
+     * @param capacity the number of samples per new segment file, if the series isn't open yet -
+     *                 the existing segments keep their capacity
+     * @return the series, which is created if necessary
+     * @throws IOException if the segments of the series can't be opened
+     */
+    synchronized StoredSeries series(final String name, final int capacity) throws IOException {
+        StoredSeries ss = series.get(name);
+        if (ss == null) {
+            ss = new StoredSeries(name, resolve(name), capacity, compressor);
+            series.put(name, ss);
+        }
+        return ss;
+    }
+
+    /**
+     * @param name the name of the raw series
+     * @return the series with its rollups, which are created or completed if necessary
+     * @throws IOException if the segments of the series or its rollups can't be opened
+     */
+    public synchronized SeriesRollup rollup(final String name) throws IOException {
+        if (SeriesRollup.isRollupName(name)) {
+            throw new IllegalArgumentException(name + " is already a rollup");
+        }
+        SeriesRollup sr = rollups.get(name);
+        if (sr == null) {
+            sr = new SeriesRollup(this, series(name));
+            rollups.put(name, sr);
+        }
+        return sr;
+    }
+
+    /**
+     * @return the names of all raw series in the store, including the ones which haven't been opened yet
+     * @throws IOException if the directory can't be read
+     */
+    public List<String> getSeriesNames() throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(StoreSegment.SUFFIX)
+                    || p.getFileName().toString().endsWith(CompressedSegment.SUFFIX))
+                .map(p -> dir.relativize(p.getParent()).toString().replace(p.getFileSystem().getSeparator(), "/"))
+                .filter(name -> !SeriesRollup.isRollupName(name))
+                .distinct()
+                .sorted()
+                .forEach(names::add);
+        }
+        return names;
+    }
+
+    /**
+     * Commits the appended samples of all open series to the disk
+     */
+    public synchronized void force() {
+        series.values().forEach(StoredSeries::force);
+    }
+
+    /**
+     * Commits the open series and waits for the running compressions - the store can't be used afterwards
+     */
+    @Override
+    public synchronized void close() {
+        force();
+        series.clear();
+        rollups.clear();
+        compressor.shutdown();
+        try {
+            if (!compressor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.log(WARNING, "the compression of {0} didn''t finish - it''s repeated on the next open", dir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Path resolve(final String name) {
+        Path p = dir;
+        for (String element : name.split("/", -1)) {
+            if (!NAME_ELEMENT.matcher(element).matches()) {
+                throw new IllegalArgumentException("invalid series name: " + name);
+            }
+            p = p.resolve(element);
+        }
+        return p;
+    }
+}
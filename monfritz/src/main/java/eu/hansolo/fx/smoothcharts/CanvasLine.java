@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.Arrays;
+
+
+/**
+ * The line of one series in display coordinates, which is drawn on the canvas of the {@link SmoothedChart}.
+ * <p>
+ * Consecutive points in the same pixel column are reduced to the first, the lowest, the highest and
+ * the last of them - the drawn line is the same, but the number of drawing commands is limited by
+ * the width of the chart instead of the number of points. The hit-tests use all points.
+ */
+final class CanvasLine {
+    private double[] xs;
+    private double[] ys;
+    private int      size;
+    private double   baseline;
+    private boolean  closeAtOrigin;
+
+
+    // ******************** Constructors **************************************
+    CanvasLine() {
+        xs = new double[0];
+        ys = new double[0];
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * @param XS the x values of the points
+     * @param YS the y values of the points
+     * @param SIZE the number of points
+     * @param BASELINE the y value, where the fill is closed
+     * @param CLOSE_AT_ORIGIN {@code true} if the fill returns along the baseline to x = 0 before it's closed
+     */
+    void set(final double[] XS, final double[] YS, final int SIZE, final double BASELINE, final boolean CLOSE_AT_ORIGIN) {
+        if (xs.length < SIZE) {
+            xs = Arrays.copyOf(xs, Math.max(SIZE, xs.length + xs.length / 2));
+            ys = Arrays.copyOf(ys, xs.length);
+        }
+        System.arraycopy(XS, 0, xs, 0, SIZE);
+        System.arraycopy(YS, 0, ys, 0, SIZE);
+        size          = SIZE;
+        baseline      = BASELINE;
+        closeAtOrigin = CLOSE_AT_ORIGIN;
+    }
+
+    int size() { return size; }
+
+    double getMinX() { return size == 0 ? 0 : xs[0]; }
+
+    double getMaxX() { return size == 0 ? 0 : xs[size - 1]; }
+
+    /**
+     * @param X the x value
+     * @return the y value of the line at x, {@link Double#NaN} if x is outside of the line
+     */
+    double getY(final double X) {
+        if (size == 0 || X < xs[0] || X > xs[size - 1]) {
+            return Double.NaN;
+        }
+        int index = Arrays.binarySearch(xs, 0, size, X);
+        if (index >= 0) {
+            return ys[index];
+        }
+        index = -index - 1;
+        final double deltaX = xs[index] - xs[index - 1];
+        return 0 == deltaX ? ys[index] : ys[index - 1] + (ys[index] - ys[index - 1]) * (X - xs[index - 1]) / deltaX;
+    }
+
+    /**
+     * @param X the x value
+     * @param Y the y value
+     * @param AREA {@code true} to test the fill, otherwise the stroke
+     * @param TOLERANCE the distance to the stroke, which is still a hit
+     * @return {@code true} if the point is on the fill or the stroke
+     */
+    boolean contains(final double X, final double Y, final boolean AREA, final double TOLERANCE) {
+        final double y = getY(X);
+        if (Double.isNaN(y)) {
+            return false;
+        }
+        if (AREA) {
+            return Y >= Math.min(y, baseline) && Y <= Math.max(y, baseline);
+        }
+        return Math.abs(Y - y) <= TOLERANCE;
+    }
+
+    void stroke(final GraphicsContext CTX) {
+        if (size == 0) {
+            return;
+        }
+        CTX.beginPath();
+        CTX.moveTo(xs[0], ys[0]);
+        trace(CTX);
+        CTX.stroke();
+    }
+
+    void fill(final GraphicsContext CTX) {
+        if (size == 0) {
+            return;
+        }
+        CTX.beginPath();
+        CTX.moveTo(xs[0], baseline);
+        trace(CTX);
+        CTX.lineTo(xs[size - 1], baseline);
+        if (closeAtOrigin) {
+            CTX.lineTo(0, baseline);
+        }
+        CTX.closePath();
+        CTX.fill();
+    }
+
+    private void trace(final GraphicsContext CTX) {
+        int first = 0;
+        while (first < size) {
+            final double column = Math.floor(xs[first]);
+            int min = first;
+            int max = first;
+            int end = first + 1;
+            while (end < size && Math.floor(xs[end]) == column) {
+                if (ys[end] < ys[min]) { min = end; }
+                if (ys[end] > ys[max]) { max = end; }
+                end++;
+            }
+            final int last = end - 1;
+            // the extremes in the order of the line
+            final int lower = Math.min(min, max);
+            final int upper = Math.max(min, max);
+            CTX.lineTo(xs[first], ys[first]);
+            if (lower != first && lower != last) {
+                CTX.lineTo(xs[lower], ys[lower]);
+            }
+            if (upper != lower && upper != first && upper != last) {
+                CTX.lineTo(xs[upper], ys[upper]);
+            }
+            if (last != first) {
+                CTX.lineTo(xs[last], ys[last]);
+            }
+            first = end;
+        }
+    }
+}
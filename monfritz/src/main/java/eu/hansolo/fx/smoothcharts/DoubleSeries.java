@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import javafx.collections.FXCollections;
+import javafx.scene.chart.XYChart;
+
+import java.util.Arrays;
+
+
+/**
+ * A series of primitive x/y values for the {@link SmoothedChart}.
+ * <p>
+ * In contrast to a {@link XYChart.Series} there are no boxed {@link XYChart.Data} objects and no
+ * symbol nodes per point - the chart builds the stroke and fill path straight from the arrays.
+ * The legend, the CSS colors and the paths are provided by an empty proxy series, which is
+ * returned by {@link #getSeries()} and can be used with the series methods of the chart,
+ * e.g. {@link SmoothedChart#setSeriesColor(XYChart.Series, javafx.scene.paint.Paint)}.
+ * <p>
+ * The x values are expected to be ascending. The indices modified since the last layout are
+ * tracked as dirty range and the points removed from the start as count, so the chart only
+ * recalculates the spline segments around the changes. Like all scene graph content, the
+ * series must only be modified on the JavaFX application thread.
+ */
+public class DoubleSeries {
+    private final XYChart.Series<Number, Number> series;
+    private double[] xValues;
+    private double[] yValues;
+    private int size;
+    private int dirtyFrom;
+    private int dirtyTo;
+    private int removedCount;
+    private Runnable onChange;
+
+
+    // ******************** Constructors **************************************
+    public DoubleSeries(final String NAME) {
+        this(NAME, 16);
+    }
+    public DoubleSeries(final String NAME, final int INITIAL_CAPACITY) {
+        series = new XYChart.Series<>(NAME, FXCollections.observableArrayList());
+        xValues = new double[Math.max(1, INITIAL_CAPACITY)];
+        yValues = new double[xValues.length];
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = 0;
+    }
+
+
+    // ******************** Public Methods ************************************
+    /**
+     * @return the proxy series, which represents this series in the chart
+     */
+    public XYChart.Series<Number, Number> getSeries() { return series; }
+
+    public String getName() { return series.getName(); }
+    public void setName(final String NAME) { series.setName(NAME); }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public double getX(final int INDEX) {
+        checkIndex(INDEX);
+        return xValues[INDEX];
+    }
+
+    public double getY(final int INDEX) {
+        checkIndex(INDEX);
+        return yValues[INDEX];
+    }
+
+    public void add(final double X, final double Y) {
+        ensureCapacity(size + 1);
+        xValues[size] = X;
+        yValues[size] = Y;
+        size++;
+        markDirty(size - 1, size);
+    }
+
+    public void set(final int INDEX, final double X, final double Y) {
+        checkIndex(INDEX);
+        if (xValues[INDEX] == X && yValues[INDEX] == Y) {
+            return;
+        }
+        xValues[INDEX] = X;
+        yValues[INDEX] = Y;
+        markDirty(INDEX, INDEX + 1);
+    }
+
+    /**
+     * Truncates the series or extends it with zero points, which are expected to be {@link #set} afterwards
+     *
+     * @param SIZE the new number of points
+     */
+    public void setSize(final int SIZE) {
+        if (SIZE < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        if (SIZE == size) {
+            return;
+        }
+        ensureCapacity(SIZE);
+        if (SIZE > size) {
+            Arrays.fill(xValues, size, SIZE, 0);
+            Arrays.fill(yValues, size, SIZE, 0);
+        }
+        final int oldSize = size;
+        size = SIZE;
+        markDirty(Math.min(oldSize, SIZE), Math.max(oldSize, SIZE));
+    }
+
+    /**
+     * Removes the oldest points - e.g. the ones which scrolled out of the visible range
+     *
+     * @param COUNT the number of points to remove from the start
+     */
+    public void removeFirst(final int COUNT) {
+        if (COUNT <= 0) {
+            return;
+        }
+        final int count = Math.min(COUNT, size);
+        System.arraycopy(xValues, count, xValues, 0, size - count);
+        System.arraycopy(yValues, count, yValues, 0, size - count);
+        size -= count;
+        // the remaining points are unchanged, only their indices moved
+        removedCount += count;
+        if (dirtyFrom < dirtyTo) {
+            dirtyFrom = Math.max(0, dirtyFrom - count);
+            dirtyTo = Math.max(0, dirtyTo - count);
+        }
+        fireChange();
+    }
+
+    public void clear() {
+        setSize(0);
+    }
+
+    /**
+     * @return the first index modified since the last layout, {@link #getDirtyTo()} if nothing was modified
+     */
+    public int getDirtyFrom() { return Math.min(dirtyFrom, dirtyTo); }
+
+    /**
+     * @return the index after the last index modified since the last layout
+     */
+    public int getDirtyTo() { return dirtyTo; }
+
+    public boolean isDirty() { return dirtyFrom < dirtyTo; }
+
+    /**
+     * @return the number of points removed by {@link #removeFirst} since the last layout -
+     *         the dirty range refers to the indices after the removal
+     */
+    public int getRemovedCount() { return removedCount; }
+
+
+    // ******************** Internal Methods **********************************
+    double[] getXValues() { return xValues; }
+
+    double[] getYValues() { return yValues; }
+
+    void setOnChange(final Runnable ON_CHANGE) { onChange = ON_CHANGE; }
+
+    void clearDirty() {
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = 0;
+        removedCount = 0;
+    }
+
+    private void markDirty(final int FROM, final int TO) {
+        dirtyFrom = Math.min(dirtyFrom, FROM);
+        dirtyTo = Math.max(dirtyTo, TO);
+        fireChange();
+    }
+
+    private void fireChange() {
+        if (null != onChange) {
+            onChange.run();
+        }
+    }
+
+    private void ensureCapacity(final int CAPACITY) {
+        if (CAPACITY > xValues.length) {
+            final int newCapacity = Math.max(CAPACITY, xValues.length * 2);
+            xValues = Arrays.copyOf(xValues, newCapacity);
+            yValues = Arrays.copyOf(yValues, newCapacity);
+        }
+    }
+
+    private void checkIndex(final int INDEX) {
+        if (INDEX < 0 || INDEX >= size) {
+            throw new IndexOutOfBoundsException("index " + INDEX + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.smoothcharts;
+
+import javafx.geometry.Point2D;
+
+
+/**
+ * User: hansolo
+ * Date: 03.11.17
+ * Time: 04:45
+ */
+public class Helper {
+
+    public static final int clamp(final int MIN, final int MAX, final int VALUE) {
+        if (VALUE < MIN) return MIN;
+        if (VALUE > MAX) return MAX;
+        return VALUE;
+    }
+    public static final double clamp(final double MIN, final double MAX, final double VALUE) {
+        if (VALUE < MIN) return MIN;
+        if (VALUE > MAX) return MAX;
+        return VALUE;
+    }
+
+    public static int roundDoubleToInt(final double VALUE){
+        double dAbs = Math.abs(VALUE);
+        int    i      = (int) dAbs;
+        double result = dAbs - (double) i;
+        if (result < 0.5) {
+            return VALUE < 0 ? -i : i;
+        } else {
+            return VALUE < 0 ? -(i + 1) : i + 1;
+        }
+    }
+
+    public static final Point2D[] subdividePoints(final Point2D[] POINTS, final int SUB_DEVISIONS) {
+        assert POINTS != null;
+        assert POINTS.length >= 3;
+
+        int      noOfPoints = POINTS.length;
+        double[] xs         = new double[noOfPoints];
+        double[] ys         = new double[noOfPoints];
+        for (int i = 0 ; i < noOfPoints ; i++) {
+            xs[i] = POINTS[i].getX();
+            ys[i] = POINTS[i].getY();
+        }
+
+        int      noOfSubdividedPoints = subdividedLength(noOfPoints, SUB_DEVISIONS);
+        double[] subdividedXs         = new double[noOfSubdividedPoints];
+        double[] subdividedYs         = new double[noOfSubdividedPoints];
+        subdividePoints(xs, ys, noOfPoints, SUB_DEVISIONS, subdividedXs, subdividedYs);
+
+        Point2D[] subdividedPoints = new Point2D[noOfSubdividedPoints];
+        for (int i = 0 ; i < noOfSubdividedPoints ; i++) {
+            subdividedPoints[i] = new Point2D(subdividedXs[i], subdividedYs[i]);
+        }
+        return subdividedPoints;
+    }
+
+    /**
+     * @param NO_OF_POINTS the number of points to subdivide
+     * @param SUB_DIVISIONS the number of subdivisions per segment
+     * @return the number of points after the subdivision
+     */
+    public static final int subdividedLength(final int NO_OF_POINTS, final int SUB_DIVISIONS) {
+        return (NO_OF_POINTS - 1) * SUB_DIVISIONS + 1;
+    }
+
+    /**
+     * Subdivides the points with a Catmull-Rom spline like {@link #subdividePoints(Point2D[], int)}, but
+     * without allocating - the results are written to the given buffers, which can be reused.
+     * <p>
+     * Each subdivided point is the weighted sum of the four control points of its segment. The weights
+     * only depend on the subdivision step, so they're tabulated once and the inner loop is a plain
+     * multiply-add over contiguous arrays, which the JIT compiles to SIMD instructions.
+     *
+     * @param XS the x values of the points
+     * @param YS the y values of the points
+     * @param NO_OF_POINTS the number of points, at least 2
+     * @param SUB_DIVISIONS the number of subdivisions per segment
+     * @param SUBDIVIDED_XS the buffer of the subdivided x values, at least {@link #subdividedLength} long
+     * @param SUBDIVIDED_YS the buffer of the subdivided y values, at least {@link #subdividedLength} long
+     * @return the number of subdivided points
+     */
+    public static final int subdividePoints(final double[] XS, final double[] YS, final int NO_OF_POINTS, final int SUB_DIVISIONS,
+                                            final double[] SUBDIVIDED_XS, final double[] SUBDIVIDED_YS) {
+        assert NO_OF_POINTS >= 2;
+        assert SUB_DIVISIONS >= 1;
+
+        final int noOfSubdividedPoints = subdividedLength(NO_OF_POINTS, SUB_DIVISIONS);
+        if (SUBDIVIDED_XS.length < noOfSubdividedPoints || SUBDIVIDED_YS.length < noOfSubdividedPoints) {
+            throw new IllegalArgumentException("buffers need to hold " + noOfSubdividedPoints + " points");
+        }
+
+        subdivideSegments(XS, YS, NO_OF_POINTS, SUB_DIVISIONS, 0, NO_OF_POINTS - 1, SUBDIVIDED_XS, SUBDIVIDED_YS);
+        return noOfSubdividedPoints;
+    }
+
+    /**
+     * Subdivides a range of segments like {@link #subdividePoints(double[], double[], int, int, double[], double[])},
+     * the other subdivided points in the buffers are left untouched. The segment {@code i} starts at the
+     * point {@code i}, its subdivided points start at the index {@code i * SUB_DIVISIONS}.
+     *
+     * @param XS the x values of the points
+     * @param YS the y values of the points
+     * @param NO_OF_POINTS the number of points, at least 2
+     * @param SUB_DIVISIONS the number of subdivisions per segment
+     * @param FROM the first segment, inclusive
+     * @param TO the last segment, exclusive - the last point is written, if this is the last segment
+     * @param SUBDIVIDED_XS the buffer of the subdivided x values
+     * @param SUBDIVIDED_YS the buffer of the subdivided y values
+     */
+    public static final void subdivideSegments(final double[] XS, final double[] YS, final int NO_OF_POINTS, final int SUB_DIVISIONS,
+                                               final int FROM, final int TO, final double[] SUBDIVIDED_XS, final double[] SUBDIVIDED_YS) {
+        assert 0 <= FROM && TO <= NO_OF_POINTS - 1;
+
+        final SplineBasis basis = SplineBasis.of(SUB_DIVISIONS);
+        final double[] w0 = basis.w0, w1 = basis.w1, w2 = basis.w2, w3 = basis.w3;
+        for (int i = FROM ; i < TO ; i++) {
+            final int i0 = i == 0 ? i : i - 1;
+            final int i3 = (i + 2 == NO_OF_POINTS) ? i + 1 : i + 2;
+            final double x0 = XS[i0], x1 = XS[i], x2 = XS[i + 1], x3 = XS[i3];
+            final double y0 = YS[i0], y1 = YS[i], y2 = YS[i + 1], y3 = YS[i3];
+
+            // the end of the segment is the start of the next one
+            final int offset = i * SUB_DIVISIONS;
+            for (int j = 0 ; j < SUB_DIVISIONS ; j++) {
+                SUBDIVIDED_XS[offset + j] = w0[j] * x0 + w1[j] * x1 + w2[j] * x2 + w3[j] * x3;
+                SUBDIVIDED_YS[offset + j] = w0[j] * y0 + w1[j] * y1 + w2[j] * y2 + w3[j] * y3;
+            }
+        }
+        if (TO == NO_OF_POINTS - 1) {
+            final int last = (NO_OF_POINTS - 1) * SUB_DIVISIONS;
+            SUBDIVIDED_XS[last] = XS[NO_OF_POINTS - 1];
+            SUBDIVIDED_YS[last] = YS[NO_OF_POINTS - 1];
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * The weights of the four control points for each subdivision step, see {@link CatmullRom}
+     */
+    private static final class SplineBasis {
+        private static volatile SplineBasis last;
+
+        private final int      subDivisions;
+        private final double[] w0;
+        private final double[] w1;
+        private final double[] w2;
+        private final double[] w3;
+
+
+        // ******************** Constructors **************************************
+        private SplineBasis(final int SUB_DIVISIONS) {
+            subDivisions = SUB_DIVISIONS;
+            w0           = new double[SUB_DIVISIONS];
+            w1           = new double[SUB_DIVISIONS];
+            w2           = new double[SUB_DIVISIONS];
+            w3           = new double[SUB_DIVISIONS];
+            for (int j = 0 ; j < SUB_DIVISIONS ; j++) {
+                final double t  = j / (double) SUB_DIVISIONS;
+                final double t2 = t * t;
+                final double t3 = t2 * t;
+                w0[j] = 0.5 * (-t + 2 * t2 - t3);
+                w1[j] = 0.5 * (2 - 5 * t2 + 3 * t3);
+                w2[j] = 0.5 * (t + 4 * t2 - 3 * t3);
+                w3[j] = 0.5 * (-t2 + t3);
+            }
+        }
+
+
+        // ******************** Methods *******************************************
+        /**
+         * The chart uses one setting at a time, so only the last basis is kept
+         */
+        private static SplineBasis of(final int SUB_DIVISIONS) {
+            SplineBasis basis = last;
+            if (null == basis || basis.subDivisions != SUB_DIVISIONS) {
+                basis = new SplineBasis(SUB_DIVISIONS);
+                last  = basis;
+            }
+            return basis;
+        }
+    }
+}
\ No newline at end of file
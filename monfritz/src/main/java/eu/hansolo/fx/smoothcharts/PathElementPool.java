@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import javafx.collections.ObservableList;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.PathElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The path elements of the stroke and the fill of one series, which are kept across layouts.
+ * <p>
+ * The coordinates of the elements are updated in place - unchanged coordinates don't invalidate
+ * the path. The element lists are only modified at their end, when the number of points changes,
+ * which fires a single change event. The stroke and the fill share the {@link LineTo} elements
+ * of the line. If the lists were replaced in the meantime, e.g. by the layout of the
+ * {@link javafx.scene.chart.AreaChart}, the pooled elements are set again instead of allocating new ones.
+ */
+final class PathElementPool {
+    private final MoveTo        strokeStart;
+    private final MoveTo        fillStart;
+    private final List<LineTo>  lines;
+    private final LineTo        fillEnd;
+    private final LineTo        fillOrigin;
+    private final ClosePath     closePath;
+    private int                 noOfLines;
+    private boolean             closeAtOrigin;
+
+
+    // ******************** Constructors **************************************
+    PathElementPool() {
+        strokeStart = new MoveTo();
+        fillStart   = new MoveTo();
+        lines       = new ArrayList<>();
+        fillEnd     = new LineTo();
+        fillOrigin  = new LineTo();
+        closePath   = new ClosePath();
+        noOfLines   = -1;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Updates the paths to the line through the given points - the fill is closed along the baseline
+     *
+     * @param STROKE_ELEMENTS the elements of the stroke path
+     * @param FILL_ELEMENTS the elements of the fill path
+     * @param XS the x values of the points
+     * @param YS the y values of the points
+     * @param NO_OF_POINTS the number of points, at least 1
+     * @param SKIP_FIRST {@code true} if the line starts after the first point, otherwise the move to the first point is repeated as line
+     * @param HEIGHT the y value of the baseline
+     * @param CLOSE_AT_ORIGIN {@code true} if the fill returns along the baseline to x = 0 before it's closed
+     */
+    void update(final ObservableList<PathElement> STROKE_ELEMENTS, final ObservableList<PathElement> FILL_ELEMENTS,
+                final double[] XS, final double[] YS, final int NO_OF_POINTS, final boolean SKIP_FIRST,
+                final double HEIGHT, final boolean CLOSE_AT_ORIGIN) {
+        final int first = SKIP_FIRST ? 1 : 0;
+        final int newNoOfLines = NO_OF_POINTS - first;
+        final boolean attached = closeAtOrigin == CLOSE_AT_ORIGIN && isAttached(STROKE_ELEMENTS, FILL_ELEMENTS);
+
+        while (lines.size() < newNoOfLines) {
+            lines.add(new LineTo());
+        }
+        strokeStart.setX(XS[0]);
+        strokeStart.setY(YS[0]);
+        fillStart.setX(XS[0]);
+        fillStart.setY(HEIGHT);
+        for (int i = 0; i < newNoOfLines; i++) {
+            final LineTo line = lines.get(i);
+            line.setX(XS[first + i]);
+            line.setY(YS[first + i]);
+        }
+        fillEnd.setX(XS[NO_OF_POINTS - 1]);
+        fillEnd.setY(HEIGHT);
+        fillOrigin.setX(0);
+        fillOrigin.setY(HEIGHT);
+
+        if (attached) {
+            // only the end of the line changes, the elements in front of the fill end keep their positions
+            if (newNoOfLines > noOfLines) {
+                final List<LineTo> added = lines.subList(noOfLines, newNoOfLines);
+                STROKE_ELEMENTS.addAll(added);
+                FILL_ELEMENTS.addAll(1 + noOfLines, added);
+            } else if (newNoOfLines < noOfLines) {
+                STROKE_ELEMENTS.remove(1 + newNoOfLines, 1 + noOfLines);
+                FILL_ELEMENTS.remove(1 + newNoOfLines, 1 + noOfLines);
+            }
+        } else {
+            final List<PathElement> stroke = new ArrayList<>(1 + newNoOfLines);
+            stroke.add(strokeStart);
+            stroke.addAll(lines.subList(0, newNoOfLines));
+            final List<PathElement> fill = new ArrayList<>(4 + newNoOfLines);
+            fill.add(fillStart);
+            fill.addAll(lines.subList(0, newNoOfLines));
+            fill.add(fillEnd);
+            if (CLOSE_AT_ORIGIN) {
+                fill.add(fillOrigin);
+            }
+            fill.add(closePath);
+            STROKE_ELEMENTS.setAll(stroke);
+            FILL_ELEMENTS.setAll(fill);
+        }
+        noOfLines = newNoOfLines;
+        closeAtOrigin = CLOSE_AT_ORIGIN;
+    }
+
+    /**
+     * @return {@code true} if the lists still contain the pooled elements of the last update
+     */
+    private boolean isAttached(final ObservableList<PathElement> STROKE_ELEMENTS, final ObservableList<PathElement> FILL_ELEMENTS) {
+        if (noOfLines < 0) {
+            return false;
+        }
+        final int fillSize = noOfLines + (closeAtOrigin ? 4 : 3);
+        return STROKE_ELEMENTS.size() == 1 + noOfLines
+            && FILL_ELEMENTS.size() == fillSize
+            && STROKE_ELEMENTS.get(0) == strokeStart
+            && FILL_ELEMENTS.get(0) == fillStart
+            && (noOfLines == 0 || (STROKE_ELEMENTS.get(noOfLines) == lines.get(noOfLines - 1)
+                                   && FILL_ELEMENTS.get(noOfLines) == lines.get(noOfLines - 1)))
+            && FILL_ELEMENTS.get(fillSize - 1) == closePath;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import java.util.Arrays;
+
+
+/**
+ * The subdivided points of a {@link DoubleSeries} in value space.
+ * <p>
+ * A Catmull-Rom spline is a weighted sum of its control points with weights adding up to 1, so it's
+ * invariant to the linear mapping of the axes. The subdivided points are therefore kept across
+ * layouts and only the segments around the points, which were modified since the last layout,
+ * are recalculated - a segment depends on its two points and their neighbours. For a sliding
+ * window, which drops the oldest point and adds a new one, these are the first and the last
+ * segments, regardless of the number of points.
+ */
+final class SeriesSpline {
+    private double[] xs;
+    private double[] ys;
+    private int noOfPoints;
+    private int subDivisions;
+
+
+    // ******************** Constructors **************************************
+    SeriesSpline() {
+        xs = new double[0];
+        ys = new double[0];
+        noOfPoints = -1;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * @return the subdivided x values in value space
+     */
+    double[] getXs() { return xs; }
+
+    /**
+     * @return the subdivided y values in value space
+     */
+    double[] getYs() { return ys; }
+
+    /**
+     * @return the number of subdivided points
+     */
+    int size() { return noOfPoints < 2 ? 0 : Helper.subdividedLength(noOfPoints, subDivisions); }
+
+    /**
+     * Discards the subdivided points - e.g. when the series was laid out without them
+     */
+    void invalidate() {
+        noOfPoints = -1;
+    }
+
+    /**
+     * Brings the subdivided points up to date with the series.
+     * Needs to be called before the dirty range of the series is cleared.
+     *
+     * @param SERIES the series with at least 2 points
+     * @param SUB_DIVISIONS the number of subdivisions per segment
+     * @return the number of recalculated segments
+     */
+    int update(final DoubleSeries SERIES, final int SUB_DIVISIONS) {
+        final int size = SERIES.size();
+        final int removed = SERIES.getRemovedCount();
+        final int newLength = Helper.subdividedLength(size, SUB_DIVISIONS);
+        final double[] xValues = SERIES.getXValues();
+        final double[] yValues = SERIES.getYValues();
+
+        if (noOfPoints < 2 || subDivisions != SUB_DIVISIONS || removed >= noOfPoints - 1) {
+            ensureCapacity(newLength);
+            noOfPoints = size;
+            subDivisions = SUB_DIVISIONS;
+            Helper.subdivideSegments(xValues, yValues, size, SUB_DIVISIONS, 0, size - 1, xs, ys);
+            return size - 1;
+        }
+
+        // move the segments of the remaining points to the front
+        final int kept = Math.min(noOfPoints - removed, size);
+        final int keptLength = Helper.subdividedLength(kept, SUB_DIVISIONS);
+        if (removed > 0) {
+            System.arraycopy(xs, removed * SUB_DIVISIONS, xs, 0, keptLength);
+            System.arraycopy(ys, removed * SUB_DIVISIONS, ys, 0, keptLength);
+        }
+        ensureCapacity(newLength);
+        noOfPoints = size;
+
+        int recalculated = 0;
+        // the first segment had the removed point as neighbour
+        final int from = (removed > 0) ? 1 : 0;
+        if (removed > 0) {
+            Helper.subdivideSegments(xValues, yValues, size, SUB_DIVISIONS, 0, 1, xs, ys);
+            recalculated++;
+        }
+        // the segments next to modified, added or truncated points
+        if (SERIES.isDirty()) {
+            final int dirtyFrom = Math.max(from, SERIES.getDirtyFrom() - 2);
+            final int dirtyTo = Math.min(size - 1, SERIES.getDirtyTo() + 1);
+            if (dirtyFrom < dirtyTo) {
+                Helper.subdivideSegments(xValues, yValues, size, SUB_DIVISIONS, dirtyFrom, dirtyTo, xs, ys);
+                recalculated += dirtyTo - dirtyFrom;
+            }
+        }
+        return recalculated;
+    }
+
+    private void ensureCapacity(final int LENGTH) {
+        if (xs.length < LENGTH) {
+            final int capacity = Math.max(LENGTH, xs.length + xs.length / 2);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package eu.hansolo.fx.smoothcharts;
 import javafx.animation.FadeTransition;
 import javafx.animation.PauseTransition;
 import javafx.animation.SequentialTransition;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.*;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
@@ -27,9 +28,12 @@ import javafx.event.EventHandler;
 import javafx.geometry.*;
 import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.chart.AreaChart;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.ValueAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
@@ -41,8 +45,12 @@ import javafx.scene.shape.*;
 import javafx.util.Duration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 
@@ -94,6 +102,20 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
     private EventHandler<MouseEvent> clickHandler;
     private EventHandler<ActionEvent> endOfTransformationHandler;
     private ListChangeListener<Series<X, Y>> seriesListener;
+    private Map<Series<X, Y>, DoubleSeries> doubleSeries;
+    private Runnable doubleSeriesListener;
+    private Map<DoubleSeries, SeriesSpline> splines;
+    private Map<Series<X, Y>, PathElementPool> pathElementPools;
+    private boolean _canvasRendering;
+    private BooleanProperty canvasRendering;
+    private Canvas canvas;
+    private Map<Series<X, Y>, CanvasLine> canvasLines;
+    private InvalidationListener canvasStyleListener;
+    private double[] dataXs = new double[0];
+    private double[] dataYs = new double[0];
+    private double[] smoothXs = new double[0];
+    private double[] smoothYs = new double[0];
+    private boolean doubleSeriesRangeValid;
 
 
     // ******************** Constructors **************************************
@@ -126,6 +148,21 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         _tooltipTimeout = 2000;
         formatString = "%.2f";
         strokePaths = new ArrayList<>();
+        doubleSeries = new LinkedHashMap<>();
+        splines = new HashMap<>();
+        pathElementPools = new HashMap<>();
+        _canvasRendering = false;
+        canvasLines = new HashMap<>();
+        canvasStyleListener = o -> {
+            if (isCanvasRendering()) {
+                drawCanvas();
+            }
+        };
+        doubleSeriesRangeValid = true;
+        doubleSeriesListener = () -> {
+            doubleSeriesRangeValid = false;
+            requestChartLayout();
+        };
         clickHandler = e -> select(e);
         endOfTransformationHandler = e -> selectorTooltip.hide();
         seriesListener = change -> {
@@ -138,6 +175,10 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
                         fillPath.addEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
                         strokePath.addEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
                         strokePaths.add(strokePath);
+                        // the canvas is drawn with the styles of the paths
+                        fillPath.fillProperty().addListener(canvasStyleListener);
+                        strokePath.strokeProperty().addListener(canvasStyleListener);
+                        strokePath.strokeWidthProperty().addListener(canvasStyleListener);
                     });
                 } else if (change.wasRemoved()) {
                     change.getRemoved().forEach(removedItem -> {
@@ -147,6 +188,18 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
                         fillPath.removeEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
                         strokePath.removeEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
                         strokePaths.remove(strokePath);
+                        fillPath.fillProperty().removeListener(canvasStyleListener);
+                        strokePath.strokeProperty().removeListener(canvasStyleListener);
+                        strokePath.strokeWidthProperty().removeListener(canvasStyleListener);
+                        pathElementPools.remove(series);
+                        canvasLines.remove(series);
+                        // a DoubleSeries proxy removed from the data directly instead of by removeSeries()
+                        final DoubleSeries ds = doubleSeries.remove(series);
+                        if (null != ds) {
+                            splines.remove(ds);
+                            ds.setOnChange(null);
+                            doubleSeriesListener.run();
+                        }
                     });
                 }
             }
@@ -233,6 +286,50 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         return smoothed;
     }
 
+    public boolean isCanvasRendering() {
+        return null == canvasRendering ? _canvasRendering : canvasRendering.get();
+    }
+
+    /**
+     * Draws the strokes and fills of the series on a canvas over the plot content instead of building
+     * a path element per point. The paths of the series stay in the scene graph without elements and
+     * provide the CSS colors and the stroke width. The spline is only subdivided down to the pixel
+     * resolution and the line is reduced to a few points per pixel column, so the drawing effort
+     * depends on the width of the chart instead of the number of points.
+     *
+     * @param CANVAS_RENDERING {@code true} to draw the series on a canvas
+     */
+    public void setCanvasRendering(final boolean CANVAS_RENDERING) {
+        if (null == canvasRendering) {
+            _canvasRendering = CANVAS_RENDERING;
+            updateCanvas();
+        } else {
+            canvasRendering.set(CANVAS_RENDERING);
+        }
+    }
+
+    public BooleanProperty canvasRenderingProperty() {
+        if (null == canvasRendering) {
+            canvasRendering = new BooleanPropertyBase(_canvasRendering) {
+                @Override
+                protected void invalidated() {
+                    updateCanvas();
+                }
+
+                @Override
+                public Object getBean() {
+                    return SmoothedChart.this;
+                }
+
+                @Override
+                public String getName() {
+                    return "canvasRendering";
+                }
+            };
+        }
+        return canvasRendering;
+    }
+
     public ChartType getChartType() {
         return null == chartType ? _chartType : chartType.get();
     }
@@ -925,8 +1022,44 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         return SERIES.getData().stream().map(node -> (StackPane) node.getNode()).collect(Collectors.toList());
     }
 
+    /**
+     * Adds a series of primitive values - both axes need to be {@link ValueAxis}
+     *
+     * @param SERIES the series
+     */
+    @SuppressWarnings("unchecked")
+    public void addSeries(final DoubleSeries SERIES) {
+        if (!(getXAxis() instanceof ValueAxis) || !(getYAxis() instanceof ValueAxis)) {
+            throw new IllegalStateException("DoubleSeries need value axes");
+        }
+        final Series<X, Y> proxy = (Series<X, Y>) (Series<?, ?>) SERIES.getSeries();
+        if (doubleSeries.containsKey(proxy)) {
+            return;
+        }
+        doubleSeries.put(proxy, SERIES);
+        splines.put(SERIES, new SeriesSpline());
+        SERIES.setOnChange(doubleSeriesListener);
+        getData().add(proxy);
+        doubleSeriesListener.run();
+    }
+
+    public void removeSeries(final DoubleSeries SERIES) {
+        if (null == doubleSeries.remove(SERIES.getSeries())) {
+            return;
+        }
+        splines.remove(SERIES);
+        SERIES.setOnChange(null);
+        getData().remove(SERIES.getSeries());
+        doubleSeriesListener.run();
+    }
+
+    public List<DoubleSeries> getDoubleSeries() {
+        return new ArrayList<>(doubleSeries.values());
+    }
+
     public void dispose() {
         getData().removeListener(seriesListener);
+        doubleSeries.values().forEach(ds -> ds.setOnChange(null));
     }
 
 
@@ -936,6 +1069,64 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         return SmoothedChart.class.getResource("smoothed-chart.css").toExternalForm();
     }
 
+    @Override
+    protected void layoutChildren() {
+        // the axes of the chart only see the changes of the Data objects
+        if (!doubleSeriesRangeValid) {
+            doubleSeriesRangeValid = true;
+            updateAxisRange();
+        }
+        super.layoutChildren();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void updateAxisRange() {
+        if (doubleSeries.isEmpty()) {
+            super.updateAxisRange();
+            return;
+        }
+        final Axis<X> xAxis = getXAxis();
+        final Axis<Y> yAxis = getYAxis();
+        final List<X> xData = xAxis.isAutoRanging() ? new ArrayList<>() : null;
+        final List<Y> yData = yAxis.isAutoRanging() ? new ArrayList<>() : null;
+        if (null == xData && null == yData) {
+            return;
+        }
+        for (Series<X, Y> series : getData()) {
+            final DoubleSeries ds = doubleSeries.get(series);
+            if (null != ds) {
+                // the value axes only need the extremes
+                if (ds.isEmpty()) {
+                    continue;
+                }
+                final double[] xValues = ds.getXValues();
+                final double[] yValues = ds.getYValues();
+                double minY = Double.POSITIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < ds.size(); i++) {
+                    minY = Math.min(minY, yValues[i]);
+                    maxY = Math.max(maxY, yValues[i]);
+                }
+                if (null != xData) {
+                    xData.add((X) Double.valueOf(xValues[0]));
+                    xData.add((X) Double.valueOf(xValues[ds.size() - 1]));
+                }
+                if (null != yData) {
+                    yData.add((Y) Double.valueOf(minY));
+                    yData.add((Y) Double.valueOf(maxY));
+                }
+            } else {
+                for (Data<X, Y> data : series.getData()) {
+                    if (null != xData) { xData.add(data.getXValue()); }
+                    if (null != yData) { yData.add(data.getYValue()); }
+                }
+            }
+        }
+        if (null != xData) { xAxis.invalidateRange(xData); }
+        if (null != yData) { yAxis.invalidateRange(yData); }
+    }
+
     @Override
     protected void layoutPlotChildren() {
         super.layoutPlotChildren();
@@ -946,12 +1137,107 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
             if (null == paths) {
                 return;
             }
-            if (isSmoothed()) {
-                smooth(paths[1].getElements(), paths[0].getElements(), height);
+            final DoubleSeries ds = doubleSeries.get(series);
+            if (null != ds) {
+                layoutDoubleSeries(ds, series, paths, height);
+            } else if (isSmoothed()) {
+                smooth(series, paths[1].getElements(), paths[0].getElements(), height);
+            } else if (isCanvasRendering()) {
+                // move the line of the area chart to the canvas, its fill is closed at the zero line
+                final int size = readPoints(paths[1].getElements());
+                final double baseline = paths[0].getElements().isEmpty() ? height : getXYFromPathElement(paths[0].getElements().get(0))[1];
+                ensureSmoothCapacity(size);
+                System.arraycopy(dataXs, 0, smoothXs, 0, size);
+                System.arraycopy(dataYs, 0, smoothYs, 0, size);
+                setLine(series, paths[1].getElements(), paths[0].getElements(), size, true, baseline, false);
             }
             paths[0].setVisible(ChartType.AREA == getChartType());
             paths[0].setManaged(ChartType.AREA == getChartType());
         });
+        if (isCanvasRendering()) {
+            drawCanvas();
+        }
+    }
+
+    /**
+     * Builds the paths of a primitive series straight from its values - the spline is kept in value space
+     * and only the segments around the modified points are recalculated
+     */
+    private void layoutDoubleSeries(final DoubleSeries SERIES, final Series<X, Y> PROXY, final Path[] PATHS, final double HEIGHT) {
+        final ObservableList<PathElement> strokeElements = PATHS[1].getElements();
+        final ObservableList<PathElement> fillElements = PATHS[0].getElements();
+        final SeriesSpline spline = splines.get(SERIES);
+        if (!isSmoothed() || SERIES.size() <= 2) {
+            spline.invalidate();
+        } else {
+            spline.update(SERIES, getEffectiveSubDivisions(SERIES.size()));
+        }
+        SERIES.clearDirty();
+        if (SERIES.isEmpty()) {
+            setLine(PROXY, strokeElements, fillElements, 0, true, HEIGHT, false);
+            return;
+        }
+
+        final double[] xValues = SERIES.getXValues();
+        final double[] yValues = SERIES.getYValues();
+        final int size = SERIES.size();
+        final double[] xTransform = getTransform(getXAxis());
+        final double[] yTransform = getTransform(getYAxis());
+
+        if (isSmoothed() && size > 2) {
+            // the axes only map the spline, it doesn't need to be recalculated
+            final int noOfPoints = spline.size();
+            ensureSmoothCapacity(noOfPoints);
+            final double[] splineXs = spline.getXs();
+            final double[] splineYs = spline.getYs();
+            for (int i = 0; i < noOfPoints; i++) {
+                smoothXs[i] = xTransform[0] + splineXs[i] * xTransform[1];
+                smoothYs[i] = yTransform[0] + splineYs[i] * yTransform[1];
+            }
+            setSmoothedLine(PROXY, noOfPoints, strokeElements, fillElements, HEIGHT);
+            return;
+        }
+
+        ensureSmoothCapacity(size);
+        for (int i = 0; i < size; i++) {
+            smoothXs[i] = xTransform[0] + xValues[i] * xTransform[1];
+            smoothYs[i] = yTransform[0] + yValues[i] * yTransform[1];
+        }
+        setLine(PROXY, strokeElements, fillElements, size, true, HEIGHT, false);
+    }
+
+    /**
+     * @param SIZE the number of points of the series
+     * @return the subdivisions - on the canvas not finer than the pixels
+     */
+    private int getEffectiveSubDivisions(final int SIZE) {
+        if (!isCanvasRendering() || SIZE < 2) {
+            return getSubDivisions();
+        }
+        final int pixelsPerSegment = (int) Math.ceil(getXAxis().getWidth() / (SIZE - 1));
+        return Helper.clamp(1, getSubDivisions(), pixelsPerSegment);
+    }
+
+    /**
+     * @return offset and scale of the linear mapping from values to display positions of a value axis
+     */
+    @SuppressWarnings("unchecked")
+    private static double[] getTransform(final Axis<?> AXIS) {
+        final ValueAxis<Number> axis = (ValueAxis<Number>) AXIS;
+        final double lower = axis.getLowerBound();
+        final double upper = axis.getUpperBound();
+        final double lowerPos = axis.getDisplayPosition(lower);
+        final double scale = (upper == lower) ? 0 : (axis.getDisplayPosition(upper) - lowerPos) / (upper - lower);
+        return new double[]{ lowerPos - lower * scale, scale };
+    }
+
+    @SuppressWarnings("unchecked")
+    private String formatXValue(final X VALUE) {
+        // e.g. time axes show a formatted time instead of the raw number
+        if (getXAxis() instanceof ValueAxis && ((ValueAxis<?>) getXAxis()).getTickLabelFormatter() != null) {
+            return ((ValueAxis<Number>) getXAxis()).getTickLabelFormatter().toString((Number) VALUE);
+        }
+        return VALUE.toString();
     }
 
     /**
@@ -1012,12 +1298,23 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         double pathMinX = 0;
         double pathWidth = 0;
         PathElement lastElement = null;
+        CanvasLine line = null;
 
         Series<X, Y> series = null;
         for (Series<X, Y> s : getData()) {
             Path[] paths = getPaths(s);
             int type = getChartType().ordinal(); // AREA == 0, LINE == 1 in ChartType enum
-            if (paths[type].contains(EVENT_X, EVENT_Y)) {
+            if (isCanvasRendering()) {
+                // the paths are empty, so the line on the canvas is tested
+                final CanvasLine canvasLine = canvasLines.get(s);
+                if (null != canvasLine && canvasLine.contains(EVENT_X, EVENT_Y, ChartType.AREA == getChartType(), paths[1].getStrokeWidth() / 2 + 1)) {
+                    series = s;
+                    line = canvasLine;
+                    pathMinX = line.getMinX();
+                    pathWidth = line.getMaxX() - line.getMinX();
+                    break;
+                }
+            } else if (paths[type].contains(EVENT_X, EVENT_Y)) {
                 series = s;
                 elements = paths[type].getElements();
                 noOfElements = elements.size();
@@ -1029,11 +1326,45 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
             }
         }
 
-        if (null == series || series.getData().isEmpty()) {
+        if (null == series) {
+            return;
+        }
+        final DoubleSeries ds = doubleSeries.get(series);
+        if (null == ds ? series.getData().isEmpty() : ds.isEmpty()) {
             return;
         }
 
-        if (isSnapToTicks()) {
+        if (isSnapToTicks() && null != ds) {
+            final double[] xTransform = getTransform(getXAxis());
+            final double[] yTransform = getTransform(getYAxis());
+            final double[] xValues = ds.getXValues();
+            // nearest point of the ascending x values
+            final double eventValue = 0 == xTransform[1] ? xValues[0] : (EVENT_X - xTransform[0]) / xTransform[1];
+            int selectedIndex = Arrays.binarySearch(xValues, 0, ds.size(), eventValue);
+            if (selectedIndex < 0) {
+                final int insertionPoint = -selectedIndex - 1;
+                selectedIndex = Helper.clamp(0, ds.size() - 1, insertionPoint);
+                if (insertionPoint > 0 && (insertionPoint == ds.size() || eventValue - xValues[insertionPoint - 1] < xValues[insertionPoint] - eventValue)) {
+                    selectedIndex = insertionPoint - 1;
+                }
+            }
+            double selectedValue = ds.getY(selectedIndex);
+
+            selector.setCenterX(CHART_X + xTransform[0] + xValues[selectedIndex] * xTransform[1]);
+            selector.setCenterY(CHART_MIN_Y + yTransform[0] + selectedValue * yTransform[1]);
+            selector.setVisible(true);
+            fadeInFadeOut.playFrom(Duration.millis(0));
+
+            Point2D tooltipLocation = selector.localToScreen(selector.getCenterX(), selector.getCenterY());
+            @SuppressWarnings("unchecked")
+            String tooltipText = new StringBuilder(formatXValue((X) Double.valueOf(xValues[selectedIndex]))).append("\n").append(String.format(Locale.US, formatString, selectedValue)).toString();
+            selectorTooltip.setText(tooltipText);
+            selectorTooltip.setX(tooltipLocation.getX());
+            selectorTooltip.setY(tooltipLocation.getY());
+            selectorTooltip.show(getScene().getWindow());
+
+            fireEvent(new SmoothedChartEvent(SmoothedChart.this, null, SmoothedChartEvent.DATA_SELECTED, selectedValue));
+        } else if (isSnapToTicks()) {
             double reverseFactor = CHART_HEIGHT / range;
             int noOfDataElements = series.getData().size();
             double interval = pathWidth / (double) (noOfDataElements - 1);
@@ -1052,7 +1383,24 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
             fadeInFadeOut.playFrom(Duration.millis(0));
 
             Point2D tooltipLocation = selector.localToScreen(selector.getCenterX(), selector.getCenterY());
-            String tooltipText = new StringBuilder(selectedData.getXValue().toString()).append("\n").append(selectedData.getYValue()).toString();
+            String tooltipText = new StringBuilder(formatXValue(selectedData.getXValue())).append("\n").append(selectedData.getYValue()).toString();
+            selectorTooltip.setText(tooltipText);
+            selectorTooltip.setX(tooltipLocation.getX());
+            selectorTooltip.setY(tooltipLocation.getY());
+            selectorTooltip.show(getScene().getWindow());
+
+            fireEvent(new SmoothedChartEvent(SmoothedChart.this, null, SmoothedChartEvent.DATA_SELECTED, selectedValue));
+        } else if (null != line) {
+            double y = line.getY(EVENT_X);
+            double selectedValue = ((getYAxis().getLayoutBounds().getHeight() - y) * factor + lowerBound);
+
+            selector.setCenterX(CHART_X + EVENT_X);
+            selector.setCenterY(CHART_MIN_Y + y);
+            selector.setVisible(true);
+            fadeInFadeOut.playFrom(Duration.millis(0));
+
+            Point2D tooltipLocation = selector.localToScreen(selector.getCenterX(), selector.getCenterY());
+            String tooltipText = new StringBuilder(String.format(Locale.US, formatString, selectedValue)).toString();
             selectorTooltip.setText(tooltipText);
             selectorTooltip.setX(tooltipLocation.getX());
             selectorTooltip.setY(tooltipLocation.getY());
@@ -1096,42 +1444,141 @@ public class SmoothedChart<X, Y> extends AreaChart<X, Y> {
         }
     }
 
-    private void smooth(ObservableList<PathElement> strokeElements, ObservableList<PathElement> fillElements, final double HEIGHT) {
-        if (fillElements.isEmpty()) return;
+    private void smooth(final Series<X, Y> SERIES, ObservableList<PathElement> strokeElements, ObservableList<PathElement> fillElements, final double HEIGHT) {
+        if (fillElements.isEmpty()) {
+            setLine(SERIES, strokeElements, fillElements, 0, false, HEIGHT, true);
+            return;
+        }
         // as we do not have direct access to the data, first recreate the list of all the data points we have
-        final Point2D[] dataPoints = new Point2D[strokeElements.size()];
-        for (int i = 0; i < strokeElements.size(); i++) {
-            final PathElement element = strokeElements.get(i);
+        final int size = readPoints(strokeElements);
+        if (size < 2) return;
+        final int subDivisions = getEffectiveSubDivisions(size);
+        final int noOfPoints = Helper.subdividedLength(size, subDivisions);
+        ensureSmoothCapacity(noOfPoints);
+        Helper.subdividePoints(dataXs, dataYs, size, subDivisions, smoothXs, smoothYs);
+        setSmoothedLine(SERIES, noOfPoints, strokeElements, fillElements, HEIGHT);
+    }
+
+    /**
+     * Reads the points of the path into the data buffers
+     *
+     * @return the number of points
+     */
+    private int readPoints(final ObservableList<PathElement> ELEMENTS) {
+        final int size = ELEMENTS.size();
+        ensureDataCapacity(size);
+        for (int i = 0; i < size; i++) {
+            final PathElement element = ELEMENTS.get(i);
             if (element instanceof MoveTo) {
-                final MoveTo move = (MoveTo) element;
-                dataPoints[i] = new Point2D(move.getX(), move.getY());
+                dataXs[i] = ((MoveTo) element).getX();
+                dataYs[i] = ((MoveTo) element).getY();
             } else if (element instanceof LineTo) {
-                final LineTo line = (LineTo) element;
-                final double x = line.getX(), y = line.getY();
-                dataPoints[i] = new Point2D(x, y);
+                dataXs[i] = ((LineTo) element).getX();
+                dataYs[i] = ((LineTo) element).getY();
             }
         }
-        double firstX = dataPoints[0].getX();
-        double lastX = dataPoints[dataPoints.length - 1].getX();
+        return size;
+    }
 
-        Point2D[] points = Helper.subdividePoints(dataPoints, getSubDivisions());
+    /**
+     * Sets the line to the first {@code NO_OF_POINTS} subdivided points of the smooth buffers -
+     * the spline starts and ends at the first and the last data point
+     */
+    private void setSmoothedLine(final Series<X, Y> SERIES, final int NO_OF_POINTS, ObservableList<PathElement> strokeElements, ObservableList<PathElement> fillElements, final double HEIGHT) {
+        final double firstX = smoothXs[0];
+
+        // drop the points, where the spline overshoots the start
+        int noOfLines = 0;
+        for (int i = 0; i < NO_OF_POINTS; i++) {
+            final double x = smoothXs[i];
+            if (Double.compare(x, firstX) >= 0) {
+                smoothXs[noOfLines] = x;
+                smoothYs[noOfLines] = smoothYs[i];
+                noOfLines++;
+            }
+        }
+        setLine(SERIES, strokeElements, fillElements, noOfLines, false, HEIGHT, true);
+    }
 
-        fillElements.clear();
-        fillElements.add(new MoveTo(firstX, HEIGHT));
+    /**
+     * Sets the line of the series to the first {@code NO_OF_POINTS} points of the smooth buffers -
+     * either as pooled path elements or on the canvas
+     */
+    private void setLine(final Series<X, Y> SERIES, ObservableList<PathElement> strokeElements, ObservableList<PathElement> fillElements,
+                         final int NO_OF_POINTS, final boolean SKIP_FIRST, final double BASELINE, final boolean CLOSE_AT_ORIGIN) {
+        if (isCanvasRendering()) {
+            canvasLines.computeIfAbsent(SERIES, s -> new CanvasLine()).set(smoothXs, smoothYs, NO_OF_POINTS, BASELINE, CLOSE_AT_ORIGIN);
+            strokeElements.clear();
+            fillElements.clear();
+        } else if (0 == NO_OF_POINTS) {
+            strokeElements.clear();
+            fillElements.clear();
+        } else {
+            pathElementPools.computeIfAbsent(SERIES, s -> new PathElementPool())
+                            .update(strokeElements, fillElements, smoothXs, smoothYs, NO_OF_POINTS, SKIP_FIRST, BASELINE, CLOSE_AT_ORIGIN);
+        }
+    }
 
-        strokeElements.clear();
-        strokeElements.add(new MoveTo(points[0].getX(), points[0].getY()));
+    private void updateCanvas() {
+        if (isCanvasRendering()) {
+            if (null == canvas) {
+                canvas = new Canvas();
+                canvas.getStyleClass().add("chart-canvas");
+                canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, clickHandler);
+            }
+            if (!getPlotChildren().contains(canvas)) {
+                getPlotChildren().add(canvas);
+            }
+        } else if (null != canvas) {
+            getPlotChildren().remove(canvas);
+            canvasLines.clear();
+        }
+        requestChartLayout();
+    }
 
-        for (Point2D p : points) {
-            if (Double.compare(p.getX(), firstX) >= 0) {
-                fillElements.add(new LineTo(p.getX(), p.getY()));
-                strokeElements.add(new LineTo(p.getX(), p.getY()));
+    /**
+     * Draws the lines of the series in their order with the styles of their paths
+     */
+    private void drawCanvas() {
+        final double width = getXAxis().getWidth();
+        final double height = getYAxis().getHeight();
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+        }
+        final GraphicsContext ctx = canvas.getGraphicsContext2D();
+        ctx.clearRect(0, 0, width, height);
+        final boolean area = ChartType.AREA == getChartType();
+        for (Series<X, Y> series : getData()) {
+            final CanvasLine line = canvasLines.get(series);
+            final Path[] paths = getPaths(series);
+            if (null == line || null == paths || !series.getNode().isVisible()) {
+                continue;
             }
+            if (area) {
+                ctx.setFill(paths[0].getFill());
+                line.fill(ctx);
+            }
+            ctx.setStroke(paths[1].getStroke());
+            ctx.setLineWidth(paths[1].getStrokeWidth());
+            ctx.setLineCap(paths[1].getStrokeLineCap());
+            ctx.setLineJoin(paths[1].getStrokeLineJoin());
+            line.stroke(ctx);
         }
+    }
 
-        fillElements.add(new LineTo(lastX, HEIGHT));
-        fillElements.add(new LineTo(0, HEIGHT));
-        fillElements.add(new ClosePath());
+    private void ensureSmoothCapacity(final int SIZE) {
+        if (smoothXs.length < SIZE) {
+            smoothXs = new double[SIZE];
+            smoothYs = new double[SIZE];
+        }
+    }
+
+    private void ensureDataCapacity(final int SIZE) {
+        if (dataXs.length < SIZE) {
+            dataXs = new double[SIZE];
+            dataYs = new double[SIZE];
+        }
     }
 
     private double[] getXYFromPathElement(final PathElement ELEMENT) {
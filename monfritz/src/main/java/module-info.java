@@ -5,6 +5,7 @@ module de.kiwiwings.monfritz {
     requires javafx.graphics;
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.net.http;
     exports de.kiwiwings.monfritz;
     exports eu.hansolo.fx.smoothcharts;
     opens de.kiwiwings.monfritz to jakarta.xml.bind;
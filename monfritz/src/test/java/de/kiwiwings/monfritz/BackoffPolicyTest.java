@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static de.kiwiwings.monfritz.BackoffPolicy.Circuit.CLOSED;
+import static de.kiwiwings.monfritz.BackoffPolicy.Circuit.HALF_OPEN;
+import static de.kiwiwings.monfritz.BackoffPolicy.Circuit.OPEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The policy takes the poll start instead of reading the clock, so each transition is pinned to
+ * a fixed {@code now}.
+ */
+class BackoffPolicyTest {
+    private static final long SEC = 1_000_000_000L;
+    private static final long NOW = 1_000 * SEC;
+    private static final long FAST = 10_000_000L;
+    private static final IOException CAUSE = new IOException("unreachable");
+
+    private static final BackoffPolicy POLICY = BackoffPolicy.DEFAULT
+        .withFailureThreshold(3)
+        .withMaxInterval(Duration.ofSeconds(5))
+        .withOpenDuration(Duration.ofSeconds(30))
+        .withSlowLatency(Duration.ofMillis(500));
+
+    @Test
+    void steadyPollsKeepTheirPeriod() {
+        final BackoffPolicy.State state = POLICY.newState("test", SEC);
+        assertTrue(state.isSteady());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(NOW + SEC, state.succeeded(NOW, FAST));
+        }
+        assertTrue(state.isSteady());
+    }
+
+    @Test
+    void failuresStretchTheIntervalWithinTheJitterBounds() {
+        // 1s -> 2s -> 4s -> capped at 5s, each jittered by +-10%
+        final long[] expected = { 2 * SEC, 4 * SEC, 5 * SEC, 5 * SEC };
+        for (int run = 0; run < 200; run++) {
+            final BackoffPolicy.State state = POLICY.withFailureThreshold(10).newState("test", SEC);
+            for (long interval : expected) {
+                assertWithinJitter(interval, state.failed(NOW, CAUSE) - NOW);
+                assertEquals(CLOSED, state.getCircuit());
+                assertFalse(state.isSteady());
+            }
+        }
+    }
+
+    @Test
+    void thresholdOpensTheCircuit() {
+        final BackoffPolicy.State state = POLICY.newState("test", SEC);
+        state.failed(NOW, CAUSE);
+        // a missed deadline counts like a failure
+        state.failed(NOW, null);
+        assertEquals(CLOSED, state.getCircuit());
+
+        assertWithinJitter(30 * SEC, state.failed(NOW, CAUSE) - NOW);
+        assertEquals(OPEN, state.getCircuit());
+    }
+
+    @Test
+    void halfOpenProbeReopensOrCloses() {
+        final BackoffPolicy.State state = POLICY.newState("test", SEC);
+        for (int i = 0; i < 3; i++) {
+            state.failed(NOW, CAUSE);
+        }
+        assertEquals(OPEN, state.getCircuit());
+
+        state.probe();
+        assertEquals(HALF_OPEN, state.getCircuit());
+        // probing a half-open or closed circuit is a no-op
+        state.probe();
+        assertEquals(HALF_OPEN, state.getCircuit());
+
+        // a single failed probe opens the circuit again
+        assertWithinJitter(30 * SEC, state.failed(NOW, CAUSE) - NOW);
+        assertEquals(OPEN, state.getCircuit());
+
+        state.probe();
+        // the interval was stretched to 4s by the first two failures and is halved on each success
+        assertWithinJitter(2 * SEC, state.succeeded(NOW, FAST) - NOW);
+        assertEquals(CLOSED, state.getCircuit());
+        assertFalse(state.isSteady());
+        assertEquals(NOW + SEC, state.succeeded(NOW, FAST));
+        assertTrue(state.isSteady());
+
+        state.probe();
+        assertEquals(CLOSED, state.getCircuit());
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        final BackoffPolicy.State state = POLICY.newState("test", SEC);
+        for (int i = 0; i < 10; i++) {
+            state.failed(NOW, CAUSE);
+            state.failed(NOW, CAUSE);
+            state.succeeded(NOW, FAST);
+            assertEquals(CLOSED, state.getCircuit());
+        }
+        state.succeeded(NOW, FAST);
+        state.succeeded(NOW, FAST);
+        assertTrue(state.isSteady());
+    }
+
+    @Test
+    void slowResponsesStretchTheInterval() {
+        final BackoffPolicy.State state = POLICY.newState("test", SEC);
+        assertWithinJitter(2 * SEC, state.succeeded(NOW, 800_000_000L) - NOW);
+        assertEquals(CLOSED, state.getCircuit());
+
+        // the moving average needs a few fast responses before the interval tightens
+        state.succeeded(NOW, FAST);
+        state.succeeded(NOW, FAST);
+        assertFalse(state.isSteady());
+        for (int i = 0; i < 5; i++) {
+            state.succeeded(NOW, FAST);
+        }
+        assertTrue(state.isSteady());
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> POLICY.withFailureThreshold(0));
+        assertThrows(IllegalArgumentException.class, () -> POLICY.withOpenDuration(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> POLICY.withMaxInterval(Duration.ofSeconds(-1)));
+    }
+
+    private static void assertWithinJitter(final long interval, final long actual) {
+        final long range = interval / 10;
+        assertTrue(actual >= interval - range && actual <= interval + range,
+            "expected " + interval + " +-" + range + ", got " + actual);
+    }
+}
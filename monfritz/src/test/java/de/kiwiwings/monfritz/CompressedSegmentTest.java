@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedSegmentTest {
+    private static final long T0 = 1_509_684_300_000L;
+    private static final int SIZE = 2 * SampleBlockEncoder.MAX_SAMPLES + 100;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compressedSegmentHoldsTheSamplesOfTheSource() throws IOException {
+        final CompressedSegment cs = compress();
+        assertEquals(SIZE, cs.size());
+        assertEquals(3, cs.getBlockCount());
+        assertEquals(T0, cs.getFirstTime());
+        assertEquals(T0 + 1000L * (SIZE - 1), cs.getLastTime());
+        assertEquals(T0 + 1000L * SampleBlockEncoder.MAX_SAMPLES, cs.getBlockTime(1));
+        assertFalse(Files.exists(dir.resolve("a" + CompressedSegment.TMP_SUFFIX)));
+
+        // reopened from the disk
+        assertScan(CompressedSegment.open(cs.getPath()), 0, SIZE);
+    }
+
+    @Test
+    void rangeScansDecodeAcrossTheBlocks() throws IOException {
+        final CompressedSegment cs = compress();
+        assertScan(cs, 0, SIZE);
+        assertScan(cs, 10, 11);
+        assertScan(cs, SampleBlockEncoder.MAX_SAMPLES - 5, SampleBlockEncoder.MAX_SAMPLES + 5);
+        assertScan(cs, 1000, 2 * SampleBlockEncoder.MAX_SAMPLES + 50);
+        assertScan(cs, 7, 7);
+
+        // the end of the range is reported, the end of the segment isn't
+        assertFalse(cs.scan(T0, T0 + 1000, (t, v) -> { }));
+        assertTrue(cs.scan(T0, Long.MAX_VALUE, (t, v) -> { }));
+        assertTrue(cs.scan(T0 + 1000L * SIZE, Long.MAX_VALUE, (t, v) -> { }));
+
+        assertEquals(0, cs.findBlock(0));
+        assertEquals(0, cs.findBlock(T0 + 1000L * (SampleBlockEncoder.MAX_SAMPLES - 1)));
+        assertEquals(1, cs.findBlock(T0 + 1000L * SampleBlockEncoder.MAX_SAMPLES));
+        assertEquals(2, cs.findBlock(Long.MAX_VALUE));
+    }
+
+    @Test
+    void cutOffSegmentIsRejected() throws IOException {
+        final Path path = compress().getPath();
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            fc.truncate(fc.size() - 1);
+        }
+        assertThrows(IOException.class, () -> CompressedSegment.open(path));
+    }
+
+    private CompressedSegment compress() throws IOException {
+        final StoreSegment seg = StoreSegment.create(dir.resolve("a" + StoreSegment.SUFFIX), SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            seg.append(T0 + 1000L * i, value(i));
+        }
+        return CompressedSegment.write(dir.resolve("a" + CompressedSegment.SUFFIX), seg);
+    }
+
+    /**
+     * @return counters, fractions and NaNs
+     */
+    private static double value(final int i) {
+        return (i % 7 == 0) ? Double.NaN : (i % 2 == 0) ? 1000L * i : i / 3.0;
+    }
+
+    /**
+     * Scans the samples {@code from} inclusive to {@code to} exclusive - the range starts
+     * and ends in between the samples
+     */
+    private static void assertScan(final CompressedSegment cs, final int from, final int to) {
+        final List<Long> times = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        cs.scan(T0 + 1000L * from - 500, T0 + 1000L * to - 500, (t, v) -> {
+            times.add(t);
+            values.add(v);
+        });
+        assertEquals(to - from, times.size());
+        for (int i = from; i < to; i++) {
+            assertEquals(T0 + 1000L * i, times.get(i - from));
+            assertEquals(value(i), values.get(i - from));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CounterRateTest {
+    private static final long SEC = 1_000_000_000L;
+    private static final long WRAP = CounterRate.WRAP_32;
+
+    @Test
+    void firstSampleHasNoRate() {
+        final CounterRate rate = new CounterRate(Duration.ZERO);
+        assertEquals(Double.NaN, rate.rate());
+        assertEquals(Double.NaN, rate.update(7 * SEC, 1_000));
+        assertEquals(500, rate.update(9 * SEC, 2_000));
+        assertEquals(500, rate.rate());
+    }
+
+    @Test
+    void wrapAt32BitIsContinued() {
+        final CounterRate rate = new CounterRate(Duration.ZERO);
+        rate.update(0, WRAP - 3_000);
+        assertEquals(2_000, rate.update(SEC, WRAP - 1_000));
+        // 1000 bytes up to the wrap, 4000 after it
+        assertEquals(5_000, rate.update(2 * SEC, 4_000));
+        assertEquals(1_000, rate.update(3 * SEC, 5_000));
+
+        // the window spans the wrap
+        final CounterRate windowed = new CounterRate(Duration.ofSeconds(2));
+        windowed.update(0, WRAP - 3_000);
+        windowed.update(SEC, WRAP - 1_000);
+        windowed.update(2 * SEC, 4_000);
+        assertEquals(3_500, windowed.rate());
+        assertEquals(5_000, windowed.update(3 * SEC, 9_000));
+    }
+
+    @Test
+    void resetToASmallerValueStartsOver() {
+        final CounterRate rate = new CounterRate(Duration.ZERO);
+        rate.update(0, 1_000_000);
+        assertEquals(1_000, rate.update(SEC, 1_001_000));
+        // a reboot - a drop outside of the upper quarter of the 32-bit range isn't a wrap
+        assertEquals(Double.NaN, rate.update(2 * SEC, 500));
+        assertEquals(300, rate.update(3 * SEC, 800));
+
+        // a drop from the upper quarter is a reset too, if the wrap would be implausibly fast
+        final CounterRate fast = new CounterRate(Duration.ZERO);
+        fast.update(0, WRAP * 3 / 4);
+        assertEquals(Double.NaN, fast.update(SEC / 10, 100));
+
+        // 64-bit counters don't wrap at 32 bits
+        final CounterRate large = new CounterRate(Duration.ZERO);
+        large.update(0, WRAP * 5);
+        assertEquals(Double.NaN, large.update(SEC, WRAP * 4));
+    }
+
+    @Test
+    void windowAveragesOverTheNewestSampleBeforeIt() {
+        final CounterRate rate = new CounterRate(Duration.ofSeconds(10));
+        long counter = 0;
+        for (int i = 0; i <= 20; i++) {
+            counter += (i <= 10) ? 1_000 : 3_000;
+            rate.update(i * SEC, counter);
+        }
+        // the samples 10..20 - 10 seconds at 3000
+        assertEquals(3_000, rate.rate());
+        // duplicates and out of order samples are ignored
+        assertEquals(3_000, rate.update(20 * SEC, 0));
+        assertEquals(3_000, rate.update(15 * SEC, 0));
+
+        rate.reset();
+        assertEquals(Double.NaN, rate.update(21 * SEC, counter));
+        assertThrows(IllegalArgumentException.class, () -> new CounterRate(Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    void increaseBetweenStoredValues() {
+        assertEquals(500, CounterRate.increase(1_000, 1_500));
+        assertEquals(0, CounterRate.increase(1_000, 1_000));
+        assertEquals(1_500, CounterRate.increase(WRAP - 1_000, 500));
+        // a reset counts from zero
+        assertEquals(500, CounterRate.increase(1_000_000, 500));
+        assertEquals(500, CounterRate.increase(WRAP + 1_000, 500));
+    }
+}
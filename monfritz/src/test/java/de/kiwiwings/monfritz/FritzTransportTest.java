@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FritzTransportTest {
+    private static final String ENVELOPE = "<s:Envelope><s:Body><u:GetAddonInfosResponse/></s:Body></s:Envelope>";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ServerSocket server;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void responseBodyIsReturned() throws IOException, InterruptedException {
+        final FritzTransport transport = serve("200 OK", ENVELOPE, ENVELOPE.length());
+        try (InputStream is = transport.post("GetAddonInfos")) {
+            assertEquals(ENVELOPE, new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void errorStatusFails() throws IOException {
+        final FritzTransport transport = serve("500 Internal Server Error", "", 0);
+        final IOException ex = assertThrows(IOException.class, () -> transport.post("GetAddonInfos"));
+        assertTrue(ex.getMessage().contains("500"), ex.getMessage());
+    }
+
+    @Test
+    void stalledBodyTimesOut() throws IOException {
+        // the headers and the start of the body arrive, the rest doesn't
+        final FritzTransport transport = serve("200 OK", ENVELOPE.substring(0, 10), ENVELOPE.length());
+        final long start = System.nanoTime();
+        assertThrows(HttpTimeoutException.class, () -> transport.post("GetAddonInfos"));
+        final long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(3), "the deadline was exceeded: " + elapsed);
+    }
+
+    /**
+     * Answers the requests of a connection with the status and the - possibly incomplete - body
+     */
+    private FritzTransport serve(final String status, final String body, final int contentLength) throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final Thread t = new Thread(() -> {
+            try (Socket s = server.accept()) {
+                final InputStream in = s.getInputStream();
+                final OutputStream out = s.getOutputStream();
+                for (;;) {
+                    readRequest(in);
+                    out.write(("HTTP/1.1 " + status + "\r\nContent-Type: text/xml\r\nContent-Length: " + contentLength
+                        + "\r\n\r\n" + body).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    if (body.length() < contentLength) {
+                        release.await(10, TimeUnit.SECONDS);
+                        return;
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // closed by the test
+            }
+        }, "fritz-stub");
+        t.setDaemon(true);
+        t.start();
+        final URI uri = URI.create("http://" + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort() + "/upnp/control/wancommonifconfig1");
+        return new FritzTransport(uri, Duration.ofMillis(500));
+    }
+
+    private static void readRequest(final InputStream in) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        while (!header.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            header.write(b);
+        }
+        for (String line : header.toString(StandardCharsets.ISO_8859_1).split("\r\n")) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                in.readNBytes(Integer.parseInt(line.substring(15).trim()));
+            }
+        }
+    }
+}
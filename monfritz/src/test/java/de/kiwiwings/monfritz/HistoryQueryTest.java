@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import de.kiwiwings.monfritz.HistoryQuery.Aggregation;
+import de.kiwiwings.monfritz.HistoryQuery.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryQueryTest {
+    private static final long H = Instant.parse("2017-11-03T04:00:00Z").toEpochMilli();
+    private static final long MIN = 60_000;
+    private static final long HOUR = 3_600_000;
+    private static final String FIELD = "totalBytesReceived";
+    private static final String DEVICE = "fritz.box";
+
+    @TempDir
+    Path dir;
+
+    private TimeSeriesStore store;
+    private final List<long[]> samples = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = TimeSeriesStore.open(dir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void stepsOfRollupsAndRawSamplesMatchTheRawSamples() throws IOException, InterruptedException {
+        // a counter every 10 seconds with a reset - the last 20 minutes aren't rolled up to hours yet
+        final Random rnd = new Random(4711);
+        long counter = 0;
+        for (long t = H; t < H + 3 * HOUR + 20 * MIN; t += 10_000) {
+            counter = (t == H + 100 * MIN) ? 1000 : counter + rnd.nextInt(1_000_000);
+            append(t, counter);
+        }
+
+        // the hourly steps are read from the hourly buckets and the raw samples of the last hour
+        assertSteps(H, H + 4 * HOUR, Duration.ofHours(1));
+        // a single step starting and ending within the hours - raw, hourly buckets, raw
+        assertSteps(H + 10 * MIN + 5_000, H + 3 * HOUR + 7 * MIN, Duration.ofHours(4));
+        // steps of 25 minutes aren't aligned to the hours, but to the minutes
+        assertSteps(H, H + 3 * HOUR + 30 * MIN, Duration.ofMinutes(25));
+        // unaligned steps are read from the raw samples
+        assertSteps(H + 5_000, H + 3 * HOUR, Duration.ofSeconds(1234));
+    }
+
+    @Test
+    void rangeWithoutSamplesGivesEmptySteps() throws IOException, InterruptedException {
+        assertThrows(IllegalArgumentException.class, () -> HistoryQuery.of(store, FIELD, H, H));
+        // no series of the field yet
+        assertTrue(HistoryQuery.of(store, FIELD, H, H + HOUR).execute().isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            append(H + 2 * HOUR + i * 1000, 100 * i);
+        }
+        for (Aggregation agg : Aggregation.values()) {
+            if (agg == Aggregation.PERCENTILE || agg == Aggregation.UTILIZATION) {
+                continue;
+            }
+            final Result r = query(H, H + HOUR, Duration.ofMinutes(20), agg);
+            assertEquals(3, r.size());
+            for (int s = 0; s < r.size(); s++) {
+                assertEquals(H + s * 20 * MIN, r.getTime(s));
+                assertEquals((agg == Aggregation.COUNT || agg == Aggregation.TOTAL) ? 0 : Double.NaN, r.getValue(s), agg.name());
+            }
+        }
+        final Result p = execute(HistoryQuery.of(store, FIELD, H + 3 * HOUR, H + 4 * HOUR).withPercentile(95));
+        assertEquals(Double.NaN, p.getValue(0));
+    }
+
+    @Test
+    void singleSampleIsItsOwnAggregate() throws IOException, InterruptedException {
+        append(H + 90 * MIN + 1234, 5_000_000);
+        assertEquals(5_000_000, query(H, H + 3 * HOUR, Duration.ofHours(3), Aggregation.MIN).getValue(0));
+        assertEquals(5_000_000, query(H, H + 3 * HOUR, Duration.ofHours(3), Aggregation.MAX).getValue(0));
+        assertEquals(5_000_000, query(H, H + 3 * HOUR, Duration.ofHours(3), Aggregation.AVG).getValue(0));
+        assertEquals(1, query(H, H + 3 * HOUR, Duration.ofHours(3), Aggregation.COUNT).getValue(0));
+        assertEquals(0, query(H, H + 3 * HOUR, Duration.ofHours(3), Aggregation.TOTAL).getValue(0));
+
+        final Result steps = query(H, H + 3 * HOUR, Duration.ofHours(1), Aggregation.COUNT);
+        assertEquals(Arrays.toString(new double[]{ 0, 1, 0 }), steps.toString());
+
+        final double median = execute(HistoryQuery.of(store, FIELD, H, H + 3 * HOUR).withPercentile(50)).getValue(0);
+        assertEquals(5_000_000, median, 5_000_000 * 0.03);
+    }
+
+    @Test
+    void percentilesAreWithinTheirErrorBound() throws IOException, InterruptedException {
+        // rates over several decades, spanning several chunks of the query
+        final Random rnd = new Random(42);
+        final double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.floor(Math.exp(rnd.nextGaussian() * 2 + 10));
+            append(H + i * 5_000L, (long) values[i]);
+        }
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for (double percentile : new double[]{ 1, 25, 50, 90, 95, 99, 99.9, 100 }) {
+            final double exact = sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+            final double estimate = execute(HistoryQuery.of(store, FIELD, H, H + values.length * 5_000L).withPercentile(percentile)).getValue(0);
+            assertEquals(exact, estimate, exact * 0.03, percentile + "th percentile");
+        }
+
+        // the percentiles of the steps
+        final Result steps = execute(HistoryQuery.of(store, FIELD, H, H + values.length * 5_000L)
+            .withStep(Duration.ofHours(2)).withPercentile(95));
+        for (int s = 0; s < steps.size(); s++) {
+            final int lo = (int) (s * 2 * HOUR / 5_000);
+            final double[] step = Arrays.copyOfRange(values, lo, Math.min(values.length, lo + (int) (2 * HOUR / 5_000)));
+            Arrays.sort(step);
+            final double exact = step[(int) Math.ceil(0.95 * step.length) - 1];
+            assertEquals(exact, steps.getValue(s), exact * 0.03, "step " + s);
+        }
+    }
+
+    private void append(final long time, final long value) throws IOException {
+        assertTrue(store.rollup(DEVICE + "/" + FIELD).append(time, value));
+        samples.add(new long[]{ time, value });
+    }
+
+    private Result query(final long from, final long to, final Duration step, final Aggregation agg) throws IOException, InterruptedException {
+        return execute(HistoryQuery.of(store, FIELD, from, to).withStep(step).withAggregation(agg));
+    }
+
+    private static Result execute(final HistoryQuery query) throws IOException, InterruptedException {
+        final Map<String, Result> results = query.execute();
+        assertEquals(Arrays.asList(DEVICE), new ArrayList<>(results.keySet()));
+        return results.get(DEVICE);
+    }
+
+    /**
+     * Compares the aggregations of the query with the exact aggregates of the appended samples
+     */
+    private void assertSteps(final long from, final long to, final Duration step) throws IOException, InterruptedException {
+        final long width = step.toMillis();
+        final int count = (int) ((to - from - 1) / width) + 1;
+        final Result min = query(from, to, step, Aggregation.MIN);
+        final Result max = query(from, to, step, Aggregation.MAX);
+        final Result avg = query(from, to, step, Aggregation.AVG);
+        final Result cnt = query(from, to, step, Aggregation.COUNT);
+        final Result total = query(from, to, step, Aggregation.TOTAL);
+        assertEquals(count, min.size());
+
+        long[] prev = null;
+        for (int s = 0; s < count; s++) {
+            final long lo = from + s * width;
+            final long hi = Math.min(to, lo + width);
+            double mn = Double.POSITIVE_INFINITY, mx = Double.NEGATIVE_INFINITY, sum = 0, inc = 0;
+            int n = 0;
+            for (long[] sample : samples) {
+                if (sample[0] < lo || sample[0] >= hi) {
+                    continue;
+                }
+                mn = Math.min(mn, sample[1]);
+                mx = Math.max(mx, sample[1]);
+                sum += sample[1];
+                // the increase since the previous sample of the range
+                inc += (prev == null) ? 0 : CounterRate.increase(prev[1], sample[1]);
+                prev = sample;
+                n++;
+            }
+            final String msg = "step " + s + " of " + step;
+            assertEquals(lo, min.getTime(s), msg);
+            assertEquals(n, cnt.getValue(s), msg);
+            assertEquals(inc, total.getValue(s), msg);
+            if (n == 0) {
+                assertEquals(Double.NaN, min.getValue(s), msg);
+                continue;
+            }
+            assertEquals(mn, min.getValue(s), msg);
+            assertEquals(mx, max.getValue(s), msg);
+            assertEquals(sum / n, avg.getValue(s), sum / n * 1e-12, msg);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollCycleTest {
+    private static final Duration DEADLINE = Duration.ofMillis(300);
+    private static final String ENVELOPE =
+        "<?xml version=\"1.0\"?>" +
+        "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>" +
+        "<u:GetAddonInfosResponse xmlns:u=\"" + FritzTransport.SERVICE_TYPE + "\">" +
+        "<NewTotalBytesSent>1234</NewTotalBytesSent><NewTotalBytesReceived>5678</NewTotalBytesReceived>" +
+        "</u:GetAddonInfosResponse></s:Body></s:Envelope>";
+    private static final SoapProjection TRANSFER = SoapProjection.of(GetAddonInfosResponse.class, "totalBytesSent", "totalBytesReceived");
+    private static final SoapProjection LIMITS = SoapProjection.of(GetCommonLinkPropertiesResponse.class, "layer1DownstreamMaxBitRate");
+
+    /** released at the end of the test - the stub never answers GetCommonLinkProperties before */
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ServerSocket server;
+    private FritzRequest<ProjectedResponse> transfer;
+    private FritzRequest<ProjectedResponse> stalled;
+    private FritzDevice device;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "fritz-stub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        device = new FritzDevice("stub", URI.create("http://" + server.getInetAddress().getHostAddress() + ":" + server.getLocalPort() + "/upnp/control"));
+        transfer = FritzRequest.getAddonInfos(device, TRANSFER);
+        stalled = FritzRequest.getCommonLinkProperties(device, LIMITS);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCycleEndsAtTheDeadlineWithTheStragglerAsGap() {
+        final PollCycle cycle = new PollCycle(device)
+            .add(stalled, Duration.ofSeconds(1))
+            .add(transfer, Duration.ofSeconds(1))
+            .withDeadline(DEADLINE)
+            .withConcurrentActions(true);
+
+        final long start = System.nanoTime();
+        final PollSnapshot snapshot = cycle.execute(start, executor);
+        final long elapsed = System.nanoTime() - start;
+
+        assertNotNull(snapshot);
+        assertTrue(elapsed >= DEADLINE.toNanos() - TimeUnit.MILLISECONDS.toNanos(20), "ended before the deadline: " + elapsed);
+        assertTrue(elapsed < DEADLINE.toNanos() + TimeUnit.MILLISECONDS.toNanos(700), "ended after the deadline: " + elapsed);
+        assertEquals(Collections.singleton(stalled), snapshot.getGaps());
+        assertTrue(snapshot.isMissing(stalled));
+        assertFalse(snapshot.isComplete());
+        assertTrue(snapshot.getFailures().isEmpty());
+
+        final ProjectedResponse pr = snapshot.getResponse(transfer);
+        assertNotNull(pr);
+        assertEquals(1234, pr.getLong(TRANSFER.slot("totalBytesSent")));
+        assertEquals(5678, pr.getLong(TRANSFER.slot("totalBytesReceived")));
+        // captured when the response arrived, not when the cycle ended
+        assertTrue(snapshot.getCaptureNanos(transfer) - start < elapsed);
+    }
+
+    @Test
+    void sequentialCycleReportsTheActionsAfterTheStragglerAsGaps() {
+        final PollCycle cycle = new PollCycle(device)
+            .add(transfer, Duration.ofSeconds(1))
+            .add(stalled, Duration.ofSeconds(1))
+            .withDeadline(DEADLINE);
+        final PollSnapshot first = cycle.execute(System.nanoTime(), executor);
+        assertNotNull(first.getResponse(transfer));
+        assertEquals(Collections.singleton(stalled), first.getGaps());
+
+        final PollCycle blocked = new PollCycle(device)
+            .add(stalled, Duration.ofSeconds(1))
+            .add(transfer, Duration.ofSeconds(1))
+            .withDeadline(DEADLINE);
+        final long start = System.nanoTime();
+        final PollSnapshot second = blocked.execute(start, executor);
+        assertTrue(System.nanoTime() - start < DEADLINE.toNanos() + TimeUnit.MILLISECONDS.toNanos(700));
+        // the deadline was used up by the straggler
+        assertEquals(2, second.getGaps().size());
+        assertTrue(second.isMissing(transfer));
+    }
+
+    @Test
+    void engineDeliversTheSnapshotAndTheGaps() throws InterruptedException {
+        final BlockingQueue<PollSnapshot> snapshots = new LinkedBlockingQueue<>();
+        final BlockingQueue<FritzRequest<?>> gaps = new LinkedBlockingQueue<>();
+        final PollCycle cycle = new PollCycle(device)
+            .add(transfer, Duration.ofSeconds(1))
+            .add(stalled, Duration.ofSeconds(1))
+            .withDeadline(DEADLINE)
+            .withConcurrentActions(true);
+
+        try (PollEngine engine = new PollEngine()) {
+            engine.schedule(cycle, new SnapshotListener() {
+                @Override
+                public void onSnapshot(final PollSnapshot snapshot) {
+                    snapshots.add(snapshot);
+                }
+
+                @Override
+                public void onGap(final PollSnapshot snapshot, final FritzRequest<?> request) {
+                    gaps.add(request);
+                }
+            });
+            final PollSnapshot snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+            assertNotNull(snapshot, "no snapshot delivered");
+            assertEquals(device, snapshot.getDevice());
+            assertNotNull(snapshot.getResponse(transfer));
+            assertEquals(stalled, gaps.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private void accept() {
+        try {
+            for (;;) {
+                final Socket s = server.accept();
+                final Thread t = new Thread(() -> serve(s), "fritz-stub-connection");
+                t.setDaemon(true);
+                t.start();
+            }
+        } catch (IOException e) {
+            // closed by the test
+        }
+    }
+
+    private void serve(final Socket s) {
+        try (Socket socket = s) {
+            final InputStream in = socket.getInputStream();
+            for (;;) {
+                final String action = readRequest(in);
+                if (action.endsWith("#GetCommonLinkProperties")) {
+                    release.await();
+                    return;
+                }
+                final byte[] body = ENVELOPE.getBytes(StandardCharsets.UTF_8);
+                socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nContent-Type: text/xml\r\nContent-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().write(body);
+                socket.getOutputStream().flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client closed the connection or the test ended
+        }
+    }
+
+    /**
+     * @return the SOAP action of the request
+     */
+    private static String readRequest(final InputStream in) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        while (!header.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            header.write(b);
+        }
+        String action = "";
+        for (String line : header.toString(StandardCharsets.ISO_8859_1).split("\r\n")) {
+            final String lower = line.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("content-length:")) {
+                in.readNBytes(Integer.parseInt(line.substring(15).trim()));
+            } else if (lower.startsWith("soapaction:")) {
+                action = line.substring(11).trim();
+            }
+        }
+        return action;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleBlockEncoderTest {
+
+    @Test
+    void specialValuesAreReproducedBitExact() {
+        final double[] values = {
+            0.0, -0.0, 0.0, Double.NaN, Double.longBitsToDouble(0x7FF8_0000_0000_0001L), Double.NaN,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, 1.0, -0.0, Double.MIN_VALUE,
+            -Double.MAX_VALUE, 0.1, 0.1, 0.2, (double) SampleBlockEncoder.MAX_INTEGRAL, -1.0
+        };
+        final long[] times = new long[values.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1_509_684_300_000L + 1000L * i;
+        }
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    void repeatedValuesCostASingleBit() {
+        final long[] times = new long[SampleBlockEncoder.MAX_SAMPLES];
+        final double[] values = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1_509_684_300_000L + 1000L * i;
+            values[i] = 100_000_000;
+        }
+        final SampleBlockEncoder encoder = assertRoundTrip(times, values);
+        // 128 bits for the first sample, the first interval of 1000 ms in 16 bits,
+        // then a bit for the time and a bit for the value
+        assertEquals((128 + 16 + 1 + 2 * (times.length - 2) + 7) / 8, encoder.getLength());
+    }
+
+    @Test
+    void largeAndIrregularTimestampGapsAreReproduced() {
+        final long[] times = {
+            1, 2, 3, 1003, 1004, 1_000_000_000L, 1_000_000_001L, 1_000_000_065L, 1_000_000_066L,
+            1_000_000_322L, 1_000_002_370L, 1_000_002_371L, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2 + 1, Long.MAX_VALUE
+        };
+        final double[] values = new double[times.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i % 3 == 0) ? i : i * 0.5;
+        }
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    void randomCountersAndGaugesAreReproduced() {
+        final Random rnd = new Random(4711);
+        final long[] times = new long[SampleBlockEncoder.MAX_SAMPLES];
+        final double[] values = new double[times.length];
+        long time = 1_509_684_300_000L;
+        long counter = 0;
+        for (int i = 0; i < times.length; i++) {
+            // mostly per second, some jitter and outages
+            time += (rnd.nextInt(10) == 0) ? 1 + rnd.nextInt(100_000) : 1000;
+            times[i] = time;
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    counter += rnd.nextInt(1 << 20);
+                    values[i] = counter;
+                    break;
+                case 1:
+                    values[i] = rnd.nextDouble() * 1e6;
+                    break;
+                case 2:
+                    values[i] = (i == 0) ? 0 : values[i - 1];
+                    break;
+                default:
+                    values[i] = -rnd.nextInt(1000);
+                    break;
+            }
+        }
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    void fullBlockRejectsFurtherSamples() {
+        final SampleBlockEncoder encoder = new SampleBlockEncoder();
+        for (int i = 1; i <= SampleBlockEncoder.MAX_SAMPLES; i++) {
+            assertTrue(encoder.add(i, i));
+        }
+        assertFalse(encoder.add(SampleBlockEncoder.MAX_SAMPLES + 1, 0));
+        assertEquals(SampleBlockEncoder.MAX_SAMPLES, encoder.getCount());
+        assertEquals(SampleBlockEncoder.MAX_SAMPLES, encoder.getLastTime());
+
+        encoder.reset();
+        assertTrue(encoder.isEmpty());
+        assertRoundTrip(encoder, new long[]{5, 6}, new double[]{Double.NaN, 0.0});
+    }
+
+    private static SampleBlockEncoder assertRoundTrip(final long[] times, final double[] values) {
+        final SampleBlockEncoder encoder = new SampleBlockEncoder();
+        assertRoundTrip(encoder, times, values);
+        return encoder;
+    }
+
+    private static void assertRoundTrip(final SampleBlockEncoder encoder, final long[] times, final double[] values) {
+        for (int i = 0; i < times.length; i++) {
+            assertTrue(encoder.add(times[i], values[i]));
+        }
+        assertEquals(times.length, encoder.getCount());
+        assertEquals(times[0], encoder.getFirstTime());
+
+        // at the start and in the middle of a buffer, which ends right after the block
+        final int length = encoder.getLength();
+        for (int offset : new int[]{0, 13}) {
+            final byte[] block = new byte[offset + length];
+            System.arraycopy(encoder.getBuffer(), 0, block, offset, length);
+            final SampleBlockDecoder decoder = new SampleBlockDecoder();
+            decoder.reset(ByteBuffer.wrap(block), offset, times.length);
+            for (int i = 0; i < times.length; i++) {
+                assertTrue(decoder.next());
+                assertEquals(times[i], decoder.getTime(), "time " + i);
+                assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.getValue()),
+                    "value " + i + ": " + values[i] + " != " + decoder.getValue());
+            }
+            assertFalse(decoder.next());
+        }
+    }
+}
+
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleReplayTest {
+    private static final SoapProjection TRANSFER = SoapProjection.of(GetAddonInfosResponse.class,
+        "totalBytesSent", "totalBytesReceived");
+    private static final Instant RECORDED = Instant.parse("2017-11-03T04:45:00Z");
+
+    @TempDir
+    Path dir;
+
+    private FritzDevice device;
+    private FritzRequest<ProjectedResponse> transfer;
+    private PollCycle cycle;
+    private SampleReplay replay;
+    private final BlockingQueue<PollSnapshot> snapshots = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() {
+        device = new FritzDevice("fritz.box", URI.create("http://fritz.box:49000"));
+        transfer = FritzRequest.getAddonInfos(device, TRANSFER);
+        cycle = new PollCycle(device).add(transfer, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (replay != null) {
+            replay.close();
+        }
+    }
+
+    @Test
+    void oldSamplesAreCapturedInsideTheWindowOfTheChart() throws IOException, InterruptedException {
+        // the chart anchors its time axis on start and shows the window before the latest sample
+        final long anchorNanos = System.nanoTime();
+        final long windowNanos = TimeUnit.SECONDS.toNanos(20);
+        final List<PollSnapshot> received = replay(log(60, 1), 1000, 60);
+
+        final long latest = received.get(received.size() - 1).getCaptureNanos(transfer);
+        for (PollSnapshot s : received) {
+            final long captured = s.getCaptureNanos(transfer);
+            assertTrue(captured - anchorNanos >= 0, "captured before the anchor of the chart");
+            assertTrue(latest - captured >= 0);
+        }
+        // the samples of the last window are visible
+        final long visible = received.stream().filter(s -> latest - s.getCaptureNanos(transfer) <= windowNanos).count();
+        assertEquals(21, visible);
+        assertEquals(RECORDED.plusSeconds(59), received.get(59).getTime());
+    }
+
+    @Test
+    void speedShortensTheScheduleButKeepsTheRecordedIntervals() throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final List<PollSnapshot> received = replay(log(21, 1), 100, 21);
+        final long elapsed = System.nanoTime() - start;
+
+        // 20 recorded seconds at 100x
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(190), "replayed too fast: " + elapsed);
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5), "replayed too slow: " + elapsed);
+        for (int i = 1; i < received.size(); i++) {
+            final long interval = received.get(i).getCaptureNanos(transfer) - received.get(i - 1).getCaptureNanos(transfer);
+            assertEquals(TimeUnit.SECONDS.toNanos(1), interval);
+        }
+    }
+
+    @Test
+    void samplesOfSeveralActionsAreReplayedInTheOrderOfTheLog() throws IOException, InterruptedException {
+        final SoapProjection bitRate = SoapProjection.of(GetCommonLinkPropertiesResponse.class, "layer1DownstreamMaxBitRate");
+        final FritzRequest<ProjectedResponse> limits = FritzRequest.getCommonLinkProperties(device, bitRate);
+        cycle.add(limits, Duration.ofSeconds(5));
+
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add(line(RECORDED.plusSeconds(i), i));
+            if (i % 5 == 0) {
+                lines.add(RECORDED.plusSeconds(i) + " fritz.box GetCommonLinkProperties layer1DownstreamMaxBitRate=" + (100_000_000 + i));
+            }
+        }
+        final List<PollSnapshot> received = replay(write(lines), 1000, 12);
+
+        final int downstream = bitRate.slot("layer1DownstreamMaxBitRate");
+        final int sent = TRANSFER.slot("totalBytesSent");
+        for (int i = 0, sample = 0; i < received.size(); i++) {
+            final PollSnapshot s = received.get(i);
+            if (lines.get(i).contains("GetCommonLinkProperties")) {
+                assertEquals(100_000_000 + sample - 1, s.getResponse(limits).getLong(downstream));
+            } else {
+                assertEquals(1000L * sample, s.getResponse(transfer).getLong(sent));
+                sample++;
+            }
+            if (i > 0) {
+                final PollSnapshot previous = received.get(i - 1);
+                assertFalse(s.getTime().isBefore(previous.getTime()));
+                assertTrue(s.getTimeNanos() - previous.getTimeNanos() >= 0);
+            }
+        }
+    }
+
+    @Test
+    void replayEndsAfterTheLastSampleAndSkipsUnknownLines() throws IOException, InterruptedException {
+        final List<String> lines = new ArrayList<>();
+        lines.add(line(RECORDED, 0));
+        lines.add("");
+        lines.add("not a sample");
+        lines.add(RECORDED.plusSeconds(1) + " other.box GetAddonInfos totalBytesSent=1");
+        lines.add(RECORDED.plusSeconds(1) + " fritz.box GetSecurityPort NewSecurityPort=49443");
+        lines.add(RECORDED.plusSeconds(1) + " fritz.box GetAddonInfos totalBytesSent=abc");
+        lines.add(line(RECORDED.plusSeconds(2), 2));
+        replay(write(lines), 1000, 2);
+
+        assertNull(snapshots.poll(200, TimeUnit.MILLISECONDS), "unexpected sample after the end of the log");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (replay.isRunning() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertFalse(replay.isRunning(), "the replay didn't finish at the end of the log");
+    }
+
+    private Path log(final int count, final int intervalSec) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(line(RECORDED.plusSeconds((long) i * intervalSec), i));
+        }
+        return write(lines);
+    }
+
+    private static String line(final Instant time, final int i) {
+        return time + " fritz.box GetAddonInfos totalBytesSent=" + (1000L * i) + " totalBytesReceived=" + (5000L * i);
+    }
+
+    private Path write(final List<String> lines) throws IOException {
+        final Path log = dir.resolve("daemon.log");
+        Files.write(log, lines, StandardCharsets.UTF_8);
+        return log;
+    }
+
+    private List<PollSnapshot> replay(final Path log, final double speed, final int expected) throws IOException, InterruptedException {
+        replay = SampleReplay.fromLog(log).withSpeed(speed);
+        replay.schedule(cycle, snapshots::add);
+        replay.start();
+        final List<PollSnapshot> received = new ArrayList<>();
+        for (int i = 0; i < expected; i++) {
+            final PollSnapshot s = snapshots.poll(10, TimeUnit.SECONDS);
+            assertNotNull(s, "only " + i + " of " + expected + " samples were replayed");
+            received.add(s);
+        }
+        return received;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import de.kiwiwings.monfritz.SeriesRollup.Aggregate;
+import de.kiwiwings.monfritz.SeriesRollup.Resolution;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeriesRollupTest {
+    private static final long H = Instant.parse("2017-11-03T04:00:00Z").toEpochMilli();
+    private static final long MIN = 60_000;
+    private static final long HOUR = 3_600_000;
+    private static final String NAME = "fritz.box/totalBytesReceived";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void minuteAndHourBucketsAreWrittenWhenTheNextBucketStarts() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            append(rollup, H, 100);
+            append(rollup, H + 20_000, 160);
+            append(rollup, H + 40_000, 190);
+            append(rollup, H + MIN, 250);
+            append(rollup, H + MIN + 59_999, 300);
+            // no sample in the third minute
+            append(rollup, H + 3 * MIN + 5_000, 310);
+            append(rollup, H + 4 * MIN, 400);
+
+            final long[] minutes = { H, H + MIN, H + 3 * MIN };
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.MIN, minutes, 100, 250, 310);
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.MAX, minutes, 190, 300, 310);
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.AVG, minutes, 150, 275, 310);
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.COUNT, minutes, 3, 2, 1);
+            // the first sample has no predecessor, the following buckets start at the last sample before them
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.INCREASE, minutes, 90, 110, 10);
+            assertEquals(H + 4 * MIN, rollup.getRollupEnd(Resolution.MINUTE));
+
+            // the hour is still open
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, new long[0]);
+            assertEquals(Long.MIN_VALUE, rollup.getRollupEnd(Resolution.HOUR));
+
+            append(rollup, H + HOUR + 5_000, 450);
+            final long[] hours = { H };
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.MIN, hours, 100);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.MAX, hours, 400);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.AVG, hours, 1710.0 / 7);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, hours, 7);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.INCREASE, hours, 300);
+            assertEquals(H + HOUR, rollup.getRollupEnd(Resolution.HOUR));
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.INCREASE, H + 4 * MIN, H + HOUR, new long[]{ H + 4 * MIN }, 90);
+
+            // a range starting within a bucket includes the bucket
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.MAX, H + 30_000, H + 2 * MIN, new long[]{ H, H + MIN }, 190, 300);
+            assertEquals(H + 3 * MIN, scan(rollup, Resolution.MINUTE, Aggregate.COUNT, H + 2 * MIN, H + 4 * MIN).get(0)[0]);
+        }
+    }
+
+    @Test
+    void increaseSpansCounterResetsAndWraps() throws IOException {
+        final long wrap = CounterRate.WRAP_32;
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            // a reboot within the first minute - the counter restarts at zero
+            append(rollup, H, 5_000);
+            append(rollup, H + 20_000, 6_000);
+            append(rollup, H + 40_000, 200);
+            append(rollup, H + 50_000, 700);
+            // a 32-bit counter wraps within the second minute
+            append(rollup, H + MIN, wrap - 1_000);
+            append(rollup, H + MIN + 30_000, wrap - 100);
+            append(rollup, H + MIN + 40_000, 400);
+            // a reset at the start of the third minute
+            append(rollup, H + 2 * MIN, 50);
+            append(rollup, H + 3 * MIN, 80);
+            append(rollup, H + HOUR, 100);
+
+            final long[] minutes = { H, H + MIN, H + 2 * MIN, H + 3 * MIN };
+            // 1000 + 200 (reset) + 500
+            // (wrap - 1000 - 700) + 900 + (400 + 100) - the drop from the upper quarter is a wrap
+            // 50 (reset)
+            // 30
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.INCREASE, minutes,
+                1_700, wrap - 300, 50, 30);
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.MIN, minutes, 200, 400, 50, 80);
+            assertBuckets(rollup, Resolution.MINUTE, Aggregate.MAX, minutes, 6_000, wrap - 100, 50, 80);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.INCREASE, new long[]{ H }, 1_700 + (wrap - 300) + 50 + 30);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, new long[]{ H }, 9);
+
+            // the raw resolution passes the increase since the previous sample of the range
+            final List<double[]> raw = scan(rollup, Resolution.RAW, Aggregate.INCREASE, H + 20_000, H + MIN);
+            assertEquals(3, raw.size());
+            assertArrayEquals(new double[]{ 0, 200, 500 }, raw.stream().mapToDouble(s -> s[1]).toArray());
+        }
+    }
+
+    @Test
+    void rollupIsBackfilledFromTheRawSeries() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            // a history, which was recorded without the rollup
+            final StoredSeries raw = store.series(NAME);
+            for (int i = 0; i <= 8; i++) {
+                assertTrue(raw.append(H + i * 15 * MIN, 1000 * i));
+            }
+        }
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            final long[] hours = { H, H + HOUR };
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.MIN, hours, 0, 4_000);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.MAX, hours, 3_000, 7_000);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.AVG, hours, 1_500, 5_500);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, hours, 4, 4);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.INCREASE, hours, 3_000, 4_000);
+            assertEquals(8, scan(rollup, Resolution.MINUTE, Aggregate.COUNT, H, H + 3 * HOUR).size());
+            assertEquals(H + 2 * HOUR, rollup.getRollupEnd(Resolution.HOUR));
+
+            // the open bucket was rebuilt and is continued
+            append(rollup, H + 2 * HOUR + 30 * MIN, 8_500);
+            append(rollup, H + 3 * HOUR, 9_000);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, H + 2 * HOUR, H + 3 * HOUR, new long[]{ H + 2 * HOUR }, 2);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.INCREASE, H + 2 * HOUR, H + 3 * HOUR, new long[]{ H + 2 * HOUR }, 1_500);
+        }
+    }
+
+    @Test
+    void reopenedRollupDoesNotRepeatTheWrittenBuckets() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            for (int i = 0; i < 90; i++) {
+                append(rollup, H + i * MIN, 10 * i);
+            }
+        }
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            assertFalse(rollup.append(H, 0));
+            append(rollup, H + 2 * HOUR, 1_000);
+
+            final long[] hours = { H, H + HOUR };
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.COUNT, hours, 60, 30);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.INCREASE, hours, 590, 300);
+            assertBuckets(rollup, Resolution.HOUR, Aggregate.AVG, hours, 295, 745);
+            assertEquals(90, scan(rollup, Resolution.MINUTE, Aggregate.COUNT, H, H + 3 * HOUR).size());
+        }
+    }
+
+    @Test
+    void aggregatesUseSmallSegments() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir)) {
+            final SeriesRollup rollup = store.rollup(NAME);
+            append(rollup, H, 100);
+            append(rollup, H + HOUR, 200);
+        }
+        final long tierSize = StoreSegment.HEADER_SIZE + (long) SeriesRollup.TIER_SEGMENT_CAPACITY * StoreSegment.RECORD_SIZE;
+        final List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir.resolve(NAME))) {
+            files.filter(p -> p.toString().endsWith(StoreSegment.SUFFIX)).forEach(segments::add);
+        }
+        // the raw segment and the minute and hour buckets of the 5 aggregates
+        assertEquals(11, segments.size());
+        for (Path seg : segments) {
+            final boolean aggregate = SeriesRollup.isRollupName(dir.relativize(seg.getParent()).toString().replace('\\', '/'));
+            assertEquals(aggregate, Files.size(seg) <= tierSize, seg.toString());
+        }
+    }
+
+    @Test
+    void coarsestResolutionWithEnoughPointsIsSelected() {
+        assertEquals(Resolution.HOUR, Resolution.select(H, H + 30 * 24 * HOUR, 720));
+        assertEquals(Resolution.MINUTE, Resolution.select(H, H + 24 * HOUR, 720));
+        assertEquals(Resolution.RAW, Resolution.select(H, H + HOUR, 720));
+        assertTrue(SeriesRollup.isRollupName(NAME + "/1h/max"));
+        assertFalse(SeriesRollup.isRollupName(NAME));
+    }
+
+    private static void append(final SeriesRollup rollup, final long time, final double value) throws IOException {
+        assertTrue(rollup.append(time, value));
+    }
+
+    private static void assertBuckets(final SeriesRollup rollup, final Resolution res, final Aggregate agg,
+                                      final long[] times, final double... values) {
+        assertBuckets(rollup, res, agg, H, H + 24 * HOUR, times, values);
+    }
+
+    private static void assertBuckets(final SeriesRollup rollup, final Resolution res, final Aggregate agg,
+                                      final long from, final long to, final long[] times, final double... values) {
+        final List<double[]> buckets = scan(rollup, res, agg, from, to);
+        assertEquals(times.length, buckets.size(), res + " " + agg);
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], (long) buckets.get(i)[0], res + " " + agg + " bucket " + i);
+            assertEquals(values[i], buckets.get(i)[1], 1e-9, res + " " + agg + " bucket " + i);
+        }
+    }
+
+    private static List<double[]> scan(final SeriesRollup rollup, final Resolution res, final Aggregate agg, final long from, final long to) {
+        final List<double[]> buckets = new ArrayList<>();
+        rollup.scan(res, agg, from, to, (time, value) -> buckets.add(new double[]{ time, value }));
+        return buckets;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StoreSegmentTest {
+    private static final long T0 = 1_509_684_300_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void uncommittedRecordsAreRecovered() throws IOException {
+        final Path file = dir.resolve("a" + StoreSegment.SUFFIX);
+        final StoreSegment seg = StoreSegment.create(file, 100);
+        append(seg, 0, 20);
+        seg.force();
+        // written to the mapping, but not committed in the header
+        append(seg, 20, 50);
+
+        final StoreSegment reopened = StoreSegment.open(file, true);
+        assertEquals(50, reopened.size());
+        assertSamples(reopened, 50);
+    }
+
+    @Test
+    void cutOffSegmentKeepsItsCompleteRecords() throws IOException {
+        final Path file = dir.resolve("a" + StoreSegment.SUFFIX);
+        final StoreSegment seg = StoreSegment.create(file, 100);
+        append(seg, 0, 60);
+        seg.force();
+        // cut off in the middle of the 31st record
+        truncate(file, StoreSegment.HEADER_SIZE + 30 * StoreSegment.RECORD_SIZE + 11);
+
+        final StoreSegment readOnly = StoreSegment.open(file, false);
+        assertEquals(30, readOnly.size());
+        assertSamples(readOnly, 30);
+
+        final StoreSegment writable = StoreSegment.open(file, true);
+        assertEquals(30, writable.size());
+        assertSamples(writable, 30);
+        // the file is extended to its capacity again
+        append(writable, 30, 100);
+        assertTrue(writable.isFull());
+        assertSamples(writable, 100);
+        assertEquals(StoreSegment.HEADER_SIZE + 100L * StoreSegment.RECORD_SIZE, Files.size(file));
+    }
+
+    @Test
+    void tornAndStaleRecordsEndTheSegment() throws IOException {
+        final Path file = dir.resolve("a" + StoreSegment.SUFFIX);
+        final StoreSegment seg = StoreSegment.create(file, 100);
+        append(seg, 0, 40);
+        seg.force();
+        append(seg, 40, 60);
+        // the 46th record lost its time, the following ones are stale
+        write(file, StoreSegment.HEADER_SIZE + 45 * StoreSegment.RECORD_SIZE, 0);
+
+        assertEquals(45, StoreSegment.open(file, false).size());
+
+        write(file, StoreSegment.HEADER_SIZE + 45 * StoreSegment.RECORD_SIZE, T0);
+        assertEquals(45, StoreSegment.open(file, false).size());
+    }
+
+    @Test
+    void cutOffHeaderIsRejected() throws IOException {
+        final Path file = dir.resolve("a" + StoreSegment.SUFFIX);
+        append(StoreSegment.create(file, 10), 0, 5);
+        truncate(file, StoreSegment.HEADER_SIZE - 1);
+        assertThrows(IOException.class, () -> StoreSegment.open(file, false));
+    }
+
+    @Test
+    void indexOfFindsTheFirstRecordAtOrAfterTheTime() throws IOException {
+        final StoreSegment seg = StoreSegment.create(dir.resolve("a" + StoreSegment.SUFFIX), 10);
+        append(seg, 0, 10);
+        assertEquals(0, seg.indexOf(0));
+        assertEquals(3, seg.indexOf(T0 + 3000));
+        assertEquals(4, seg.indexOf(T0 + 3001));
+        assertEquals(10, seg.indexOf(T0 + 10_000));
+        assertEquals(5, seg.indexOf(T0 + 9000, 5));
+    }
+
+    static void append(final StoreSegment seg, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            seg.append(T0 + 1000L * i, value(i));
+        }
+    }
+
+    static double value(final int i) {
+        return (i % 7 == 0) ? Double.NaN : (i % 2 == 0) ? 1000L * i : i / 3.0;
+    }
+
+    private static void assertSamples(final StoreSegment seg, final int size) {
+        for (int i = 0; i < size; i++) {
+            assertEquals(T0 + 1000L * i, seg.getTime(i));
+            assertEquals(value(i), seg.getValue(i));
+        }
+        assertEquals(T0, seg.getFirstTime());
+        assertEquals(T0 + 1000L * (size - 1), seg.getLastTime());
+    }
+
+    private static void truncate(final Path file, final long size) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            fc.truncate(size);
+        }
+    }
+
+    private static void write(final Path file, final long position, final long time) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            fc.write(ByteBuffer.allocate(8).putLong(0, time), position);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 by Andreas Beeker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.kiwiwings.monfritz;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeSeriesStoreTest {
+    private static final long T0 = 1_509_684_300_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fullSegmentsAreCompressedOffTheWritingThread() throws IOException {
+        final List<Runnable> compressions = new ArrayList<>();
+        final StoredSeries series = new StoredSeries("s", dir, 100, compressions::add);
+        append(series, 0, 250);
+
+        // the full segments are only queued and are scanned uncompressed
+        assertEquals(2, compressions.size());
+        assertEquals(Arrays.asList(StoreSegment.SUFFIX, StoreSegment.SUFFIX, StoreSegment.SUFFIX), suffixes(dir));
+        assertSeries(series, 250);
+
+        compressions.forEach(Runnable::run);
+        assertEquals(Arrays.asList(CompressedSegment.SUFFIX, CompressedSegment.SUFFIX, StoreSegment.SUFFIX), suffixes(dir));
+        assertSeries(series, 250);
+        assertEquals(250, series.size());
+        assertEquals(T0, series.getFirstTime());
+        assertEquals(T0 + 249_000, series.getLatestTime());
+    }
+
+    @Test
+    void failedCompressionKeepsTheSegmentsInOrder() throws IOException {
+        final List<Runnable> compressions = new ArrayList<>();
+        final StoredSeries series = new StoredSeries("s", dir, 100, compressions::add);
+        append(series, 0, 250);
+
+        // the first compression can't move its file in place
+        final Path first = dir.resolve(String.format("%020d", T0) + CompressedSegment.SUFFIX);
+        Files.createDirectory(first);
+        Files.createFile(first.resolve("blocker"));
+        compressions.forEach(Runnable::run);
+
+        // the blocker and the uncompressed segments - the second one waits for the first
+        assertEquals(Arrays.asList(CompressedSegment.SUFFIX, StoreSegment.SUFFIX, StoreSegment.SUFFIX, StoreSegment.SUFFIX), suffixes(dir));
+        assertSeries(series, 250);
+    }
+
+    @Test
+    void storeCompressesInTheBackgroundAndReopens() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir, 100)) {
+            append(store.series("fritz.box/totalBytesSent"), 0, 350);
+            assertSeries(store.series("fritz.box/totalBytesSent"), 350);
+        }
+        // closing waits for the compressions
+        final Path seriesDir = dir.resolve("fritz.box").resolve("totalBytesSent");
+        assertEquals(Arrays.asList(CompressedSegment.SUFFIX, CompressedSegment.SUFFIX, CompressedSegment.SUFFIX, StoreSegment.SUFFIX),
+            suffixes(seriesDir));
+
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir, 100)) {
+            assertEquals(Arrays.asList("fritz.box/totalBytesSent"), store.getSeriesNames());
+            final StoredSeries series = store.series("fritz.box/totalBytesSent");
+            assertSeries(series, 350);
+            append(series, 350, 400);
+            assertSeries(series, 400);
+        }
+    }
+
+    @Test
+    void interruptedCompressionIsCleanedUpAndRepeated() throws IOException {
+        final Path seriesDir = dir.resolve("fritz.box").resolve("totalBytesSent");
+        final StoredSeries crashed = new StoredSeries("fritz.box/totalBytesSent", seriesDir, 100, r -> {
+            // the process dies during the compression
+        });
+        append(crashed, 0, 150);
+        crashed.force();
+        final Path tmp = seriesDir.resolve(String.format("%020d", T0) + CompressedSegment.TMP_SUFFIX);
+        Files.write(tmp, new byte[]{'M', 'F'});
+
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir, 100)) {
+            assertFalse(Files.exists(tmp));
+            assertSeries(store.series("fritz.box/totalBytesSent"), 150);
+        }
+        assertEquals(Arrays.asList(CompressedSegment.SUFFIX, StoreSegment.SUFFIX), suffixes(seriesDir));
+
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir, 100)) {
+            assertSeries(store.series("fritz.box/totalBytesSent"), 150);
+        }
+    }
+
+    @Test
+    void olderSamplesAreIgnored() throws IOException {
+        try (TimeSeriesStore store = TimeSeriesStore.open(dir, 100)) {
+            final StoredSeries series = store.series("s");
+            assertTrue(series.append(T0, 1));
+            assertFalse(series.append(T0, 2));
+            assertFalse(series.append(T0 - 1, 2));
+            assertEquals(1, series.size());
+        }
+    }
+
+    private static void append(final StoredSeries series, final int from, final int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            assertTrue(series.append(T0 + 1000L * i, StoreSegmentTest.value(i)));
+        }
+    }
+
+    private static void assertSeries(final StoredSeries series, final int size) {
+        final List<Long> times = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        series.scan(0, Long.MAX_VALUE, (t, v) -> {
+            times.add(t);
+            values.add(v);
+        });
+        assertEquals(size, times.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(T0 + 1000L * i, times.get(i));
+            assertEquals(StoreSegmentTest.value(i), values.get(i));
+        }
+        // a range across the segments
+        final List<Long> range = new ArrayList<>();
+        series.scan(T0 + 95_000, T0 + 105_000, (t, v) -> range.add(t));
+        assertEquals(Math.max(0, Math.min(size, 105) - 95), range.size());
+    }
+
+    private static List<String> suffixes(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                .sorted()
+                .map(name -> name.substring(name.indexOf('.')))
+                .collect(Collectors.toList());
+        }
+    }
+}
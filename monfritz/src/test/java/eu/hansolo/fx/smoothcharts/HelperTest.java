@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import javafx.geometry.Point2D;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class HelperTest {
+    private static final double EPSILON       = 1e-9;
+    private static final int[]  NO_OF_POINTS  = { 2, 3, 4, 7, 50 };
+    private static final int[]  SUB_DIVISIONS = { 1, 2, 3, 8, 16 };
+
+
+    // ******************** Tests *********************************************
+    @Test
+    void primitiveKernelMatchesCatmullRom() {
+        final Random rnd = new Random(4711);
+        for (int noOfPoints : NO_OF_POINTS) {
+            for (int subDivisions : SUB_DIVISIONS) {
+                final Point2D[] points   = randomPoints(rnd, noOfPoints);
+                final Point2D[] expected = catmullRom(points, subDivisions);
+                final double[]  xs       = xs(points);
+                final double[]  ys       = ys(points);
+                final double[]  subXs    = new double[expected.length + 5];
+                final double[]  subYs    = new double[expected.length + 5];
+
+                assertEquals(expected.length, Helper.subdividePoints(xs, ys, noOfPoints, subDivisions, subXs, subYs));
+                assertPoints(expected, subXs, subYs, 0, expected.length, noOfPoints + "/" + subDivisions);
+
+                if (noOfPoints >= 3) {
+                    final Point2D[] actual = Helper.subdividePoints(points, subDivisions);
+                    assertEquals(expected.length, actual.length);
+                    assertPoints(expected, xs(actual), ys(actual), 0, expected.length, noOfPoints + "/" + subDivisions);
+                }
+            }
+        }
+    }
+
+    @Test
+    void twoPointsGiveTheSegmentBetweenThem() {
+        final Point2D[] points = { new Point2D(0, 1), new Point2D(4, 3) };
+        final double[]  subXs  = new double[9];
+        final double[]  subYs  = new double[9];
+        assertEquals(9, Helper.subdividePoints(xs(points), ys(points), 2, 8, subXs, subYs));
+        assertPoints(catmullRom(points, 8), subXs, subYs, 0, 9, "2 points");
+        assertEquals(0, subXs[0]);
+        assertEquals(1, subYs[0]);
+        assertEquals(4, subXs[8]);
+        assertEquals(3, subYs[8]);
+    }
+
+    @Test
+    void segmentRangesMatchCatmullRom() {
+        final Random rnd = new Random(815);
+        for (int noOfPoints : NO_OF_POINTS) {
+            for (int subDivisions : SUB_DIVISIONS) {
+                final Point2D[] points   = randomPoints(rnd, noOfPoints);
+                final Point2D[] expected = catmullRom(points, subDivisions);
+                final int       last     = noOfPoints - 2;
+                final String    msg      = noOfPoints + "/" + subDivisions;
+
+                // the first segment duplicates its first point as outer control point
+                double[] subXs = nans(expected.length);
+                double[] subYs = nans(expected.length);
+                Helper.subdivideSegments(xs(points), ys(points), noOfPoints, subDivisions, 0, 1, subXs, subYs);
+                assertPoints(expected, subXs, subYs, 0, subDivisions + (last == 0 ? 1 : 0), msg);
+                assertUntouched(subXs, subDivisions + (last == 0 ? 1 : 0), expected.length, msg);
+
+                // the last segment duplicates its last point and writes the end point
+                subXs = nans(expected.length);
+                subYs = nans(expected.length);
+                Helper.subdivideSegments(xs(points), ys(points), noOfPoints, subDivisions, last, last + 1, subXs, subYs);
+                assertUntouched(subXs, 0, last * subDivisions, msg);
+                assertPoints(expected, subXs, subYs, last * subDivisions, expected.length, msg);
+
+                // an inner range leaves the end point alone
+                if (noOfPoints >= 4) {
+                    subXs = nans(expected.length);
+                    subYs = nans(expected.length);
+                    Helper.subdivideSegments(xs(points), ys(points), noOfPoints, subDivisions, 1, last, subXs, subYs);
+                    assertUntouched(subXs, 0, subDivisions, msg);
+                    assertPoints(expected, subXs, subYs, subDivisions, last * subDivisions, msg);
+                    assertUntouched(subXs, last * subDivisions, expected.length, msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsSmallBuffers() {
+        final double[] values = { 0, 1, 2 };
+        assertThrows(IllegalArgumentException.class,
+                     () -> Helper.subdividePoints(values, values, 3, 4, new double[8], new double[9]));
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * The per segment evaluation of the spline, which the primitive kernel replaced
+     */
+    private static Point2D[] catmullRom(final Point2D[] POINTS, final int SUB_DIVISIONS) {
+        final int       noOfPoints       = POINTS.length;
+        final Point2D[] subdividedPoints = new Point2D[((noOfPoints - 1) * SUB_DIVISIONS) + 1];
+        final double    increments       = 1.0 / (double) SUB_DIVISIONS;
+        for (int i = 0 ; i < noOfPoints - 1 ; i++) {
+            final Point2D p0 = i == 0 ? POINTS[i] : POINTS[i - 1];
+            final Point2D p3 = (i + 2 == noOfPoints) ? POINTS[i + 1] : POINTS[i + 2];
+            final CatmullRom crs = new CatmullRom(p0, POINTS[i], POINTS[i + 1], p3);
+            for (int j = 0 ; j <= SUB_DIVISIONS ; j++) {
+                subdividedPoints[(i * SUB_DIVISIONS) + j] = crs.q(j * increments);
+            }
+        }
+        return subdividedPoints;
+    }
+
+    private static void assertPoints(final Point2D[] EXPECTED, final double[] XS, final double[] YS, final int FROM, final int TO, final String MSG) {
+        for (int i = FROM ; i < TO ; i++) {
+            assertEquals(EXPECTED[i].getX(), XS[i], EPSILON, MSG + " x at " + i);
+            assertEquals(EXPECTED[i].getY(), YS[i], EPSILON, MSG + " y at " + i);
+        }
+    }
+
+    private static void assertUntouched(final double[] VALUES, final int FROM, final int TO, final String MSG) {
+        for (int i = FROM ; i < TO ; i++) {
+            assertTrue(Double.isNaN(VALUES[i]), MSG + " overwritten at " + i);
+        }
+    }
+
+    private static Point2D[] randomPoints(final Random RND, final int NO_OF_POINTS) {
+        final Point2D[] points = new Point2D[NO_OF_POINTS];
+        double x = 0;
+        for (int i = 0 ; i < NO_OF_POINTS ; i++) {
+            x += 0.1 + RND.nextDouble();
+            points[i] = new Point2D(x, RND.nextDouble() * 100 - 50);
+        }
+        return points;
+    }
+
+    private static double[] nans(final int LENGTH) {
+        final double[] values = new double[LENGTH];
+        Arrays.fill(values, Double.NaN);
+        return values;
+    }
+
+    private static double[] xs(final Point2D[] POINTS) {
+        return Arrays.stream(POINTS).mapToDouble(Point2D::getX).toArray();
+    }
+
+    private static double[] ys(final Point2D[] POINTS) {
+        return Arrays.stream(POINTS).mapToDouble(Point2D::getY).toArray();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 by Gerrit Grunwald
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.smoothcharts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class SeriesSplineTest {
+
+    // ******************** Tests *********************************************
+    @Test
+    void eachStepMatchesAFullSubdivision() {
+        final Random       rnd    = new Random(4711);
+        final DoubleSeries series = new DoubleSeries("random");
+        final SeriesSpline spline = new SeriesSpline();
+        double x = 0;
+        for (int i = 0 ; i < 30 ; i++) { series.add(x++, rnd.nextDouble()); }
+
+        for (int step = 0 ; step < 5000 ; step++) {
+            x = modify(rnd, series, x);
+            layout(spline, series, 16, "step " + step);
+        }
+    }
+
+    @Test
+    void severalChangesPerLayoutMatchAFullSubdivision() {
+        final Random       rnd    = new Random(42);
+        final DoubleSeries series = new DoubleSeries("random");
+        final SeriesSpline spline = new SeriesSpline();
+        double x            = 0;
+        int    subDivisions = 16;
+        long   recalculated = 0;
+        int    layouts      = 0;
+        for (int i = 0 ; i < 50 ; i++) { series.add(x++, rnd.nextDouble()); }
+
+        for (int step = 0 ; step < 10000 ; step++) {
+            x = modify(rnd, series, x);
+            if (rnd.nextInt(50) == 0) { subDivisions = 1 + rnd.nextInt(20); }
+            if (rnd.nextInt(3) == 0) { continue; }
+            final int segments = layout(spline, series, subDivisions, "step " + step);
+            if (segments >= 0) {
+                recalculated += segments;
+                layouts++;
+            }
+        }
+        // the sliding window recalculates a few segments instead of all of them
+        assertTrue(recalculated < layouts * 10L, recalculated + " segments in " + layouts + " layouts");
+    }
+
+    @Test
+    void slidingWindowRecalculatesTheSegmentsAtBothEnds() {
+        final DoubleSeries series = new DoubleSeries("window");
+        final SeriesSpline spline = new SeriesSpline();
+        for (int i = 0 ; i < 100 ; i++) { series.add(i, Math.sin(i)); }
+        assertEquals(99, layout(spline, series, 8, "initial"));
+
+        series.removeFirst(1);
+        series.add(100, Math.sin(100));
+        // the new first segment and the last two segments
+        assertEquals(3, layout(spline, series, 8, "slide"));
+
+        // an unchanged value doesn't mark the series dirty
+        series.set(50, series.getX(50), series.getY(50));
+        assertEquals(0, layout(spline, series, 8, "unchanged"));
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Applies a random modification - mostly the sliding window of a live chart
+     */
+    private static double modify(final Random RND, final DoubleSeries SERIES, final double X) {
+        double x = X;
+        final int op = RND.nextInt(20);
+        if (op < 12) {
+            SERIES.removeFirst(1);
+            SERIES.add(x++, RND.nextDouble());
+        } else if (op < 15) {
+            if (SERIES.size() > 0) {
+                final int index = RND.nextInt(SERIES.size());
+                SERIES.set(index, SERIES.getX(index), RND.nextDouble());
+            }
+        } else if (op < 17) {
+            SERIES.removeFirst(RND.nextInt(Math.max(1, SERIES.size() / 4)));
+        } else if (op < 19) {
+            for (int i = RND.nextInt(6) ; i > 0 ; i--) { SERIES.add(x++, RND.nextDouble()); }
+        } else if (SERIES.size() > 3) {
+            SERIES.setSize(SERIES.size() - RND.nextInt(3));
+        }
+        // keep the series from draining
+        while (SERIES.size() < 3) { SERIES.add(x++, RND.nextDouble()); }
+        return x;
+    }
+
+    /**
+     * Updates the spline like a layout and compares it with a full subdivision of the series
+     *
+     * @return the number of recalculated segments, -1 if the series has too few points
+     */
+    private static int layout(final SeriesSpline SPLINE, final DoubleSeries SERIES, final int SUB_DIVISIONS, final String STEP) {
+        final int size = SERIES.size();
+        if (size < 2) {
+            SPLINE.invalidate();
+            SERIES.clearDirty();
+            return -1;
+        }
+        final int recalculated = SPLINE.update(SERIES, SUB_DIVISIONS);
+        SERIES.clearDirty();
+
+        final int      length = Helper.subdividedLength(size, SUB_DIVISIONS);
+        final double[] xs     = new double[length];
+        final double[] ys     = new double[length];
+        Helper.subdividePoints(SERIES.getXValues(), SERIES.getYValues(), size, SUB_DIVISIONS, xs, ys);
+        final double[] segXs  = new double[length];
+        final double[] segYs  = new double[length];
+        Helper.subdivideSegments(SERIES.getXValues(), SERIES.getYValues(), size, SUB_DIVISIONS, 0, size - 1, segXs, segYs);
+
+        assertEquals(length, SPLINE.size(), STEP);
+        for (int i = 0 ; i < length ; i++) {
+            assertEquals(xs[i], SPLINE.getXs()[i], STEP + ", x " + i + " of " + length);
+            assertEquals(ys[i], SPLINE.getYs()[i], STEP + ", y " + i + " of " + length);
+            assertEquals(segXs[i], xs[i], STEP + ", segment x " + i);
+            assertEquals(segYs[i], ys[i], STEP + ", segment y " + i);
+        }
+        return recalculated;
+    }
+}